@@ -0,0 +1,161 @@
+package ru.centerinvest.sctd.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import ru.centerinvest.sctd.repository.DocumentFileInfo;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.service.ContentAddressedFileStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Скачивание файла документа по HTTP.
+ * Поддерживается одиночный диапазон (Range). Локальные файлы передаются через FileChannel.transferTo
+ * без промежуточного буфера в куче.
+ */
+@RestController
+@RequestMapping("/documents")
+@RequiredArgsConstructor
+public class DocumentFileController {
+
+    // Первый диапазон заголовка; единица измерения регистронезависима
+    private static final Pattern RANGE_PATTERN = Pattern.compile(
+            "bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*(,.*)?", Pattern.CASE_INSENSITIVE);
+
+    private final DocumentRepository documentRepository;
+    private final ContentAddressedFileStore contentAddressedFileStore;
+
+    @GetMapping("/{id}/file")
+    public void downloadFile(@PathVariable Long id,
+                             @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                             HttpServletResponse response) throws IOException {
+        DocumentFileInfo fileInfo = documentRepository.findFileInfoById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Документ не найден"));
+
+        Optional<Path> localPath = contentAddressedFileStore.localPath(fileInfo.getFileDigest(), fileInfo.getFilePath());
+        try {
+            long size = localPath.isPresent()
+                    ? Files.size(localPath.get())
+                    : contentAddressedFileStore.size(fileInfo.getFileDigest(), fileInfo.getFilePath());
+            long start = 0;
+            long end = size - 1;
+
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            // Некорректный заголовок Range игнорируется: отдается весь файл
+            ByteRange bounds = range != null ? parseRange(range, size) : null;
+            if (bounds != null) {
+                if (bounds == ByteRange.UNSATISFIABLE) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                start = bounds.start();
+                end = bounds.end();
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            } else {
+                response.setStatus(HttpStatus.OK.value());
+            }
+
+            long length = Math.max(end - start + 1, 0);
+            response.setContentType(fileInfo.getFileType() != null ? fileInfo.getFileType() : "application/octet-stream");
+            response.setContentLengthLong(length);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(fileInfo.getFileName(), StandardCharsets.UTF_8)
+                    .build()
+                    .toString());
+
+            if (localPath.isPresent()) {
+                transfer(localPath.get(), start, length, response);
+            } else {
+                // Удаленное хранилище или сжатый файл: диапазон читается потоком
+                try (InputStream in = contentAddressedFileStore.open(
+                        fileInfo.getFileDigest(), fileInfo.getFilePath(), start, length)) {
+                    in.transferTo(response.getOutputStream());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Файл документа не найден");
+        }
+    }
+
+    private static void transfer(Path path, long start, long length, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Включительные границы диапазона
+     */
+    private record ByteRange(long start, long end) {
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+    }
+
+    /**
+     * Разбор заголовка Range вида bytes=a-b, bytes=a- или bytes=-n (RFC 9110).
+     * Возвращает границы, {@link ByteRange#UNSATISFIABLE} для корректного, но неудовлетворимого диапазона
+     * или null, если заголовок нужно игнорировать (другие единицы, ошибка синтаксиса, пустой файл).
+     * Несколько диапазонов не поддерживаются — отдается первый.
+     */
+    private static ByteRange parseRange(String range, long size) {
+        Matcher matcher = RANGE_PATTERN.matcher(range);
+        if (!matcher.matches() || size == 0) {
+            return null;
+        }
+        String from = matcher.group(1);
+        String to = matcher.group(2);
+        if (from.isEmpty()) {
+            if (to.isEmpty()) {
+                return null;
+            }
+            long suffix = parsePosition(to);
+            return suffix > 0 ? new ByteRange(Math.max(0, size - suffix), size - 1) : ByteRange.UNSATISFIABLE;
+        }
+        long start = parsePosition(from);
+        long last = to.isEmpty() ? Long.MAX_VALUE : parsePosition(to);
+        if (last < start) {
+            return null;
+        }
+        return start < size ? new ByteRange(start, Math.min(last, size - 1)) : ByteRange.UNSATISFIABLE;
+    }
+
+    // Позиция больше long заведомо за пределами файла
+    private static long parsePosition(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDate;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -13,4 +15,7 @@ public class LegalDocumentDto {
     private String title;
     private String description;
     private String sourceUrl;
+    private String number;
+    private String documentType;
+    private LocalDate issueDate;
 } 
\ No newline at end of file
@@ -0,0 +1,163 @@
+package ru.centerinvest.sctd.grpc;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Потоковая выдача файла частями фиксированного размера.
+ * Локальный файл отображается в память окнами, части оборачиваются в ByteString без копирования в кучу;
+ * файл из удаленного хранилища читается потоком по одной части.
+ * Следующая часть читается и отправляется только когда транспорт готов ее принять.
+ */
+class DocumentFileStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentFileStreamer.class);
+
+    static final int CHUNK_SIZE = 256 * 1024;
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Источник частей файла начиная с заданного смещения
+     */
+    private interface ChunkSource extends Closeable {
+        ByteString read(long position, int length) throws IOException;
+    }
+
+    private final ServerCallStreamObserver<FileChunk> responseObserver;
+    private final ChunkSource source;
+    private final long totalSize;
+    private final long end;
+
+    private long position;
+    private boolean completed;
+
+    private DocumentFileStreamer(ServerCallStreamObserver<FileChunk> responseObserver, ChunkSource source,
+                                 long totalSize, long offset, long length) {
+        this.responseObserver = responseObserver;
+        this.source = source;
+        this.totalSize = totalSize;
+        this.position = Math.min(offset, totalSize);
+        this.end = length > 0 ? Math.min(totalSize, position + length) : totalSize;
+    }
+
+    /**
+     * Выдача локального файла через отображение в память
+     */
+    static DocumentFileStreamer forChannel(ServerCallStreamObserver<FileChunk> responseObserver, FileChannel channel,
+                                           long offset, long length) throws IOException {
+        long totalSize = channel.size();
+        return new DocumentFileStreamer(responseObserver, new MappedChunkSource(channel, totalSize), totalSize, offset, length);
+    }
+
+    /**
+     * Выдача потока, уже спозиционированного на начало диапазона
+     */
+    static DocumentFileStreamer forStream(ServerCallStreamObserver<FileChunk> responseObserver, InputStream in,
+                                          long totalSize, long offset, long length) {
+        return new DocumentFileStreamer(responseObserver, new StreamChunkSource(in), totalSize, offset, length);
+    }
+
+    void start() {
+        responseObserver.setOnCancelHandler(this::close);
+        responseObserver.setOnReadyHandler(this::onReady);
+    }
+
+    private void onReady() {
+        if (completed) {
+            return;
+        }
+        try {
+            while (responseObserver.isReady() && !completed) {
+                if (position >= end) {
+                    close();
+                    responseObserver.onCompleted();
+                    return;
+                }
+                int chunkLength = (int) Math.min(CHUNK_SIZE, end - position);
+                responseObserver.onNext(FileChunk.newBuilder()
+                        .setData(source.read(position, chunkLength))
+                        .setOffset(position)
+                        .setTotalSize(totalSize)
+                        .build());
+                position += chunkLength;
+            }
+        } catch (Exception e) {
+            close();
+            logger.error("Ошибка при чтении файла документа: {}", e.getMessage(), e);
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при чтении файла документа: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    private void close() {
+        completed = true;
+        try {
+            source.close();
+        } catch (IOException e) {
+            logger.warn("Не удалось закрыть файл документа: {}", e.getMessage());
+        }
+    }
+
+    private static final class MappedChunkSource implements ChunkSource {
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedChunkSource(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public ByteString read(long position, int length) throws IOException {
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAP_WINDOW_SIZE, size - windowStart));
+            }
+            return UnsafeByteOperations.unsafeWrap(window.slice((int) (position - windowStart), length));
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+
+    private static final class StreamChunkSource implements ChunkSource {
+
+        private final InputStream in;
+
+        StreamChunkSource(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public ByteString read(long position, int length) throws IOException {
+            byte[] chunk = in.readNBytes(length);
+            if (chunk.length < length) {
+                throw new IOException("Файл короче заявленного размера");
+            }
+            // Массив больше нигде не используется, копия не нужна
+            return UnsafeByteOperations.unsafeWrap(chunk);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
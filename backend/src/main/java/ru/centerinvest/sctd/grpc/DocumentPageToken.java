@@ -0,0 +1,54 @@
+package ru.centerinvest.sctd.grpc;
+
+import io.grpc.Status;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Непрозрачный токен курсорной пагинации.
+ * Содержит ключ (createdAt, id) последнего документа страницы.
+ */
+final class DocumentPageToken {
+
+    private static final String VERSION = "v1";
+
+    private DocumentPageToken() {
+    }
+
+    static String encode(DocumentResponse lastDocument) {
+        String raw = VERSION + ":" + lastDocument.getCreatedAt().getSeconds() + ":" + lastDocument.getCreatedAt().getNanos()
+                + ":" + lastDocument.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Позиция для выборки следующей страницы; пустой токен означает первую страницу
+     */
+    static ScrollPosition decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 4 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException(raw);
+            }
+            LocalDateTime createdAt = LocalDateTime.ofEpochSecond(
+                    Long.parseLong(parts[1]), Integer.parseInt(parts[2]), ZoneOffset.UTC);
+            long id = Long.parseLong(parts[3]);
+            return ScrollPosition.forward(Map.of("createdAt", createdAt, "id", id));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            // DateTimeException — время вне допустимого диапазона (например, наносекунды)
+            throw Status.INVALID_ARGUMENT
+                    .withDescription("Некорректный токен страницы")
+                    .asRuntimeException();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ru.centerinvest.sctd.grpc;
+
+import com.google.protobuf.Timestamp;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.centerinvest.sctd.model.Comment;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.DocumentRevision;
+import ru.centerinvest.sctd.model.StatusHistory;
+import ru.centerinvest.sctd.model.User;
+import ru.centerinvest.sctd.repository.CommentRepository;
+import ru.centerinvest.sctd.repository.DocumentRevisionRepository;
+import ru.centerinvest.sctd.repository.DocumentSummary;
+import ru.centerinvest.sctd.repository.StatusHistoryRepository;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сборка gRPC ответов по документам.
+ * История статусов и комментарии загружаются для всей страницы сразу,
+ * поэтому число запросов к БД не зависит от размера страницы.
+ */
+@Component
+@RequiredArgsConstructor
+public class DocumentResponseAssembler {
+
+    private final StatusHistoryRepository statusHistoryRepository;
+    private final CommentRepository commentRepository;
+    private final DocumentRevisionRepository documentRevisionRepository;
+
+    public DocumentResponse toDocumentResponse(Document document) {
+        return toDocumentResponses(List.of(document)).get(0);
+    }
+
+    public List<DocumentResponse> toDocumentResponses(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Long> documentIds = documents.stream()
+                .map(Document::getId)
+                .toList();
+
+        // Три запроса на всю страницу вместо трех на каждый документ
+        Map<Long, List<StatusHistory>> historyByDocument = new HashMap<>();
+        for (StatusHistory history : statusHistoryRepository.findByDocumentIdsWithUser(documentIds)) {
+            historyByDocument.computeIfAbsent(history.getDocument().getId(), id -> new ArrayList<>()).add(history);
+        }
+
+        Map<Long, List<Comment>> commentsByDocument = new HashMap<>();
+        for (Comment comment : commentRepository.findByDocumentIdsWithUser(documentIds)) {
+            commentsByDocument.computeIfAbsent(comment.getDocument().getId(), id -> new ArrayList<>()).add(comment);
+        }
+
+        Map<Long, List<DocumentRevision>> revisionsByDocument = new HashMap<>();
+        for (DocumentRevision revision : documentRevisionRepository.findByDocumentIdsWithAuthor(documentIds)) {
+            revisionsByDocument.computeIfAbsent(revision.getDocument().getId(), id -> new ArrayList<>()).add(revision);
+        }
+
+        // Один и тот же пользователь встречается в странице многократно
+        Map<Long, UserResponse> users = new HashMap<>();
+
+        List<DocumentResponse> responses = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            DocumentResponse.Builder responseBuilder = toDocumentResponseBuilder(document, users);
+
+            for (StatusHistory history : historyByDocument.getOrDefault(document.getId(), Collections.emptyList())) {
+                responseBuilder.addStatusHistory(toStatusHistoryResponse(history, users));
+            }
+
+            for (Comment comment : commentsByDocument.getOrDefault(document.getId(), Collections.emptyList())) {
+                responseBuilder.addComments(toCommentResponse(comment, users));
+            }
+
+            for (DocumentRevision revision : revisionsByDocument.getOrDefault(document.getId(), Collections.emptyList())) {
+                responseBuilder.addRevisions(toRevisionResponse(revision, users));
+            }
+
+            responses.add(responseBuilder.build());
+        }
+        return responses;
+    }
+
+    /**
+     * Краткое представление для списков: без истории статусов и комментариев
+     */
+    public List<DocumentResponse> toSummaryResponses(List<DocumentSummary> summaries) {
+        Map<Long, UserResponse> users = new HashMap<>();
+        List<DocumentResponse> responses = new ArrayList<>(summaries.size());
+        for (DocumentSummary summary : summaries) {
+            responses.add(toSummaryResponse(summary, users));
+        }
+        return responses;
+    }
+
+    public DocumentResponse toSummaryResponse(DocumentSummary summary) {
+        return toSummaryResponse(summary, new HashMap<>());
+    }
+
+    public CommentResponse toCommentResponse(Comment comment) {
+        return toCommentResponse(comment, new HashMap<>());
+    }
+
+    public RevisionResponse toRevisionResponse(DocumentRevision revision) {
+        return toRevisionResponse(revision, new HashMap<>());
+    }
+
+    private DocumentResponse.Builder toDocumentResponseBuilder(Document document, Map<Long, UserResponse> users) {
+        DocumentResponse.Builder responseBuilder = DocumentResponse.newBuilder()
+                .setId(document.getId())
+                .setTitle(document.getTitle())
+                .setDescription(document.getDescription() != null ? document.getDescription() : "")
+                .setDepartment(document.getDepartment())
+                .setAuthor(toUserResponse(document.getAuthor(), users))
+                .setStatus(document.getStatus().name())
+                .setFileName(document.getFileName())
+                .setFileType(document.getFileType())
+                .setFileSize(document.getFileSize())
+                .setFileUrl("/api/documents/" + document.getId() + "/file");
+
+        if (document.getCreatedAt() != null) {
+            responseBuilder.setCreatedAt(toTimestamp(document.getCreatedAt()));
+        }
+
+        if (document.getUpdatedAt() != null) {
+            responseBuilder.setUpdatedAt(toTimestamp(document.getUpdatedAt()))
+                    .setVersion(toVersion(document.getUpdatedAt()));
+        }
+
+        return responseBuilder;
+    }
+
+    private DocumentResponse toSummaryResponse(DocumentSummary summary, Map<Long, UserResponse> users) {
+        DocumentSummary.AuthorSummary author = summary.getAuthor();
+        DocumentResponse.Builder responseBuilder = DocumentResponse.newBuilder()
+                .setId(summary.getId())
+                .setTitle(summary.getTitle())
+                .setDescription(summary.getDescription() != null ? summary.getDescription() : "")
+                .setDepartment(summary.getDepartment())
+                .setAuthor(users.computeIfAbsent(author.getId(), id -> UserResponse.newBuilder()
+                        .setId(author.getId())
+                        .setName(author.getName())
+                        .setEmail(author.getEmail())
+                        .setDepartment(author.getDepartment())
+                        .setRole(author.getRole().name())
+                        .build()))
+                .setStatus(summary.getStatus().name())
+                .setFileName(summary.getFileName())
+                .setFileType(summary.getFileType())
+                .setFileSize(summary.getFileSize())
+                .setFileUrl("/api/documents/" + summary.getId() + "/file");
+
+        if (summary.getCreatedAt() != null) {
+            responseBuilder.setCreatedAt(toTimestamp(summary.getCreatedAt()));
+        }
+
+        if (summary.getUpdatedAt() != null) {
+            responseBuilder.setUpdatedAt(toTimestamp(summary.getUpdatedAt()))
+                    .setVersion(toVersion(summary.getUpdatedAt()));
+        }
+
+        return responseBuilder.build();
+    }
+
+    private UserResponse toUserResponse(User user, Map<Long, UserResponse> users) {
+        return users.computeIfAbsent(user.getId(), id -> UserResponse.newBuilder()
+                .setId(user.getId())
+                .setName(user.getName())
+                .setEmail(user.getEmail())
+                .setDepartment(user.getDepartment())
+                .setRole(user.getRole().name())
+                .build());
+    }
+
+    private StatusHistoryResponse toStatusHistoryResponse(StatusHistory history, Map<Long, UserResponse> users) {
+        StatusHistoryResponse.Builder responseBuilder = StatusHistoryResponse.newBuilder()
+                .setId(history.getId())
+                .setUser(toUserResponse(history.getUser(), users))
+                .setStatus(history.getStatus().name())
+                .setComment(history.getComment() != null ? history.getComment() : "");
+
+        if (history.getCreatedAt() != null) {
+            responseBuilder.setDate(toTimestamp(history.getCreatedAt()));
+        }
+
+        return responseBuilder.build();
+    }
+
+    private CommentResponse toCommentResponse(Comment comment, Map<Long, UserResponse> users) {
+        CommentResponse.Builder responseBuilder = CommentResponse.newBuilder()
+                .setId(comment.getId())
+                .setUser(toUserResponse(comment.getUser(), users))
+                .setText(comment.getText());
+
+        if (comment.getCreatedAt() != null) {
+            responseBuilder.setDate(toTimestamp(comment.getCreatedAt()));
+        }
+
+        return responseBuilder.build();
+    }
+
+    private RevisionResponse toRevisionResponse(DocumentRevision revision, Map<Long, UserResponse> users) {
+        RevisionResponse.Builder responseBuilder = RevisionResponse.newBuilder()
+                .setId(revision.getId())
+                .setRevision(revision.getRevisionNumber())
+                .setAuthor(toUserResponse(revision.getAuthor(), users))
+                .setFileName(revision.getFileName())
+                .setFileType(revision.getFileType())
+                .setFileSize(revision.getFileSize())
+                .setComment(revision.getComment() != null ? revision.getComment() : "")
+                .setStorage(revision.getStorage().name())
+                .setStoredSize(revision.getStoredSize());
+
+        if (revision.getCreatedAt() != null) {
+            responseBuilder.setCreatedAt(toTimestamp(revision.getCreatedAt()));
+        }
+
+        return responseBuilder.build();
+    }
+
+    /**
+     * Версия документа: updatedAt в микросекундах от эпохи
+     */
+    public static long toVersion(LocalDateTime updatedAt) {
+        return updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + updatedAt.getNano() / 1_000;
+    }
+
+    static Timestamp toTimestamp(LocalDateTime dateTime) {
+        Instant instant = dateTime.toInstant(ZoneOffset.UTC);
+        return Timestamp.newBuilder()
+                .setSeconds(instant.getEpochSecond())
+                .setNanos(instant.getNano())
+                .build();
+    }
+}
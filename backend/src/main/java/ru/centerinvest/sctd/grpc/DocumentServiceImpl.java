@@ -1,50 +1,146 @@
 package ru.centerinvest.sctd.grpc;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.Timestamp;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
 import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import net.devh.boot.grpc.server.service.GrpcService;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import ru.centerinvest.sctd.model.Comment;
 import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.DocumentCounter;
+import ru.centerinvest.sctd.model.DocumentRevision;
 import ru.centerinvest.sctd.model.StatusHistory;
 import ru.centerinvest.sctd.model.User;
+import ru.centerinvest.sctd.repository.DocumentFileInfo;
 import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.repository.DocumentSummary;
 import ru.centerinvest.sctd.service.CommentService;
+import ru.centerinvest.sctd.service.ContentAddressedFileStore;
+import ru.centerinvest.sctd.service.DocumentCache;
+import ru.centerinvest.sctd.service.DocumentCounterService;
+import ru.centerinvest.sctd.service.DocumentIngestionPipeline;
+import ru.centerinvest.sctd.service.DocumentPreviewService;
+import ru.centerinvest.sctd.service.DocumentQueryService;
+import ru.centerinvest.sctd.service.DocumentRevisionService;
+import ru.centerinvest.sctd.service.DocumentSearchService;
 import ru.centerinvest.sctd.service.DocumentService;
+import ru.centerinvest.sctd.service.SerializedDocumentCache;
 import ru.centerinvest.sctd.service.StatusHistoryService;
 
 import java.io.IOException;
-import java.time.Instant;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @GrpcService
 @RequiredArgsConstructor
 public class DocumentServiceImpl extends DocumentServiceGrpc.DocumentServiceImplBase {
 
+    private static final int STREAM_BATCH_SIZE = 100;
+
     private final DocumentService documentService;
     private final DocumentRepository documentRepository;
+    private final DocumentQueryService documentQueryService;
     private final CommentService commentService;
     private final StatusHistoryService statusHistoryService;
-
+    private final DocumentResponseAssembler documentResponseAssembler;
+    private final DocumentSearchService documentSearchService;
+    private final DocumentCounterService documentCounterService;
+    private final DocumentCache documentCache;
+    private final SerializedDocumentCache serializedDocumentCache;
+    private final ContentAddressedFileStore contentAddressedFileStore;
+    private final DocumentIngestionPipeline documentIngestionPipeline;
+    private final DocumentRevisionService documentRevisionService;
+    private final DocumentPreviewService documentPreviewService;
+    private final TransactionTemplate transactionTemplate;
+
+    // Предельный размер файла потоковой загрузки
+    @Value("${file.max-upload-size:1073741824}")
+    private long maxUploadSize;
+
+    /**
+     * GetDocument регистрируется с маршаллером для готовых байт: ответ берется из кэша
+     * сериализованных сообщений и пишется в поток без повторной сборки и сериализации.
+     * Поэтому getDocument базового класса не переопределяется — единственная реализация в getSerializedDocument.
+     */
     @Override
-    public void getDocument(GetDocumentRequest request, StreamObserver<DocumentResponse> responseObserver) {
+    public ServerServiceDefinition bindService() {
+        ServerServiceDefinition definition = super.bindService();
+        MethodDescriptor<GetDocumentRequest, DocumentResponse> getDocumentMethod = DocumentServiceGrpc.getGetDocumentMethod();
+        MethodDescriptor<GetDocumentRequest, ByteString> preserializedMethod = getDocumentMethod
+                .toBuilder(getDocumentMethod.getRequestMarshaller(), PreserializedMarshaller.INSTANCE)
+                .build();
+
+        ServiceDescriptor.Builder serviceDescriptor = ServiceDescriptor.newBuilder(DocumentServiceGrpc.SERVICE_NAME)
+                .setSchemaDescriptor(definition.getServiceDescriptor().getSchemaDescriptor())
+                .addMethod(preserializedMethod);
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            if (!method.getMethodDescriptor().getFullMethodName().equals(getDocumentMethod.getFullMethodName())) {
+                serviceDescriptor.addMethod(method.getMethodDescriptor());
+            }
+        }
+
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(serviceDescriptor.build())
+                .addMethod(preserializedMethod, ServerCalls.asyncUnaryCall(this::getSerializedDocument));
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            if (!method.getMethodDescriptor().getFullMethodName().equals(getDocumentMethod.getFullMethodName())) {
+                builder.addMethod(method);
+            }
+        }
+        return builder.build();
+    }
+
+    private void getSerializedDocument(GetDocumentRequest request, StreamObserver<ByteString> responseObserver) {
         try {
-            Document document = documentService.getDocumentById(request.getId());
-            DocumentResponse response = convertToDocumentResponse(document);
+            // Версия читается по первичному ключу; по ней проверяется условный запрос и ищутся байты в кэше
+            LocalDateTime updatedAt = findDocumentVersion(request.getId());
+
+            ByteString response;
+            if (isNotModified(request, updatedAt)) {
+                response = notModifiedResponse(request.getId(), updatedAt).toByteString();
+            } else if (request.getView() == DocumentView.DOCUMENT_VIEW_SUMMARY) {
+                response = loadDocumentResponse(request).toByteString();
+            } else {
+                // Полный ответ берется из кэша документов, который сбрасывается только после фиксации изменения:
+                // собранный из прежней версии ответ не должен попасть в кэш под новой версией
+                response = serializedDocumentCache.get(request.getId(), DocumentResponseAssembler.toVersion(updatedAt),
+                        () -> {
+                            DocumentResponse loaded = loadDocumentResponse(request);
+                            return new SerializedDocumentCache.Serialized(loaded.getVersion(), loaded.toByteString());
+                        });
+            }
             responseObserver.onNext(response);
             responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
         } catch (Exception e) {
             responseObserver.onError(Status.INTERNAL
                     .withDescription("Ошибка при получении документа: " + e.getMessage())
@@ -52,42 +148,70 @@ public class DocumentServiceImpl extends DocumentServiceGrpc.DocumentServiceImpl
         }
     }
 
+    private LocalDateTime findDocumentVersion(long documentId) {
+        return documentRepository.findUpdatedAtById(documentId)
+                .orElseThrow(() -> Status.NOT_FOUND
+                        .withDescription("Документ не найден")
+                        .asRuntimeException());
+    }
+
+    private boolean isNotModified(GetDocumentRequest request, LocalDateTime updatedAt) {
+        if (request.getIfVersion() != 0) {
+            return request.getIfVersion() == DocumentResponseAssembler.toVersion(updatedAt);
+        }
+        if (request.hasIfModifiedSince()) {
+            LocalDateTime modifiedSince = LocalDateTime.ofEpochSecond(
+                    request.getIfModifiedSince().getSeconds(), request.getIfModifiedSince().getNanos(), ZoneOffset.UTC);
+            return !updatedAt.isAfter(modifiedSince);
+        }
+        return false;
+    }
+
+    private DocumentResponse notModifiedResponse(long documentId, LocalDateTime updatedAt) {
+        return DocumentResponse.newBuilder()
+                .setId(documentId)
+                .setVersion(DocumentResponseAssembler.toVersion(updatedAt))
+                .setNotModified(true)
+                .build();
+    }
+
+    private DocumentResponse loadDocumentResponse(GetDocumentRequest request) {
+        if (request.getView() == DocumentView.DOCUMENT_VIEW_SUMMARY) {
+            // Краткое представление читается одной проекцией без коллекций
+            return documentRepository.findSummaryById(request.getId())
+                    .map(documentResponseAssembler::toSummaryResponse)
+                    .orElseThrow(() -> Status.NOT_FOUND
+                            .withDescription("Документ не найден")
+                            .asRuntimeException());
+        }
+        // Полный документ читается через кэш; изменения сбрасывают его явно
+        return documentCache.get(request.getId(),
+                id -> documentResponseAssembler.toDocumentResponse(documentService.getDocumentById(id)));
+    }
+
     @Override
     public void listDocuments(ListDocumentsRequest request, StreamObserver<ListDocumentsResponse> responseObserver) {
         try {
-            // Создаем запрос пагинации
-            PageRequest pageRequest = PageRequest.of(
-                    request.getPage() > 0 ? request.getPage() : 0,
-                    request.getSize() > 0 ? request.getSize() : 10
-            );
+            int size = request.getSize() > 0 ? request.getSize() : 10;
+            boolean summary = request.getView() == DocumentView.DOCUMENT_VIEW_SUMMARY;
 
             // Фильтрация по статусу и/или отделу
-            Page<Document> documentsPage;
-            if (!request.getStatus().isEmpty() && !request.getDepartment().isEmpty()) {
-                Document.Status status = Document.Status.valueOf(request.getStatus());
-                documentsPage = documentRepository.findByStatusAndDepartment(status, request.getDepartment(), pageRequest);
-            } else if (!request.getStatus().isEmpty()) {
-                Document.Status status = Document.Status.valueOf(request.getStatus());
-                documentsPage = documentRepository.findByStatus(status, pageRequest);
-            } else if (!request.getDepartment().isEmpty()) {
-                documentsPage = documentRepository.findByDepartment(request.getDepartment(), pageRequest);
+            Document.Status status = !request.getStatus().isEmpty() ? Document.Status.valueOf(request.getStatus()) : null;
+            String department = !request.getDepartment().isEmpty() ? request.getDepartment() : null;
+
+            ListDocumentsResponse response;
+            if (!request.getSearchQuery().isBlank()) {
+                response = searchDocuments(request, status, department, size, summary);
+            } else if (request.getUseCursor() || !request.getPageToken().isEmpty()) {
+                response = listDocumentsByCursor(request, status, department, size, summary);
             } else {
-                documentsPage = documentRepository.findAll(pageRequest);
+                response = listDocumentsByPage(request, status, department, size, summary);
             }
 
-            // Создаем ответ
-            List<DocumentResponse> documentResponses = documentsPage.getContent().stream()
-                    .map(this::convertToDocumentResponse)
-                    .collect(Collectors.toList());
-
-            ListDocumentsResponse response = ListDocumentsResponse.newBuilder()
-                    .addAllDocuments(documentResponses)
-                    .setTotalPages(documentsPage.getTotalPages())
-                    .setTotalElements(documentsPage.getTotalElements())
-                    .build();
-
             responseObserver.onNext(response);
             responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
         } catch (Exception e) {
             responseObserver.onError(Status.INTERNAL
                     .withDescription("Ошибка при получении списка документов: " + e.getMessage())
@@ -95,6 +219,333 @@ public class DocumentServiceImpl extends DocumentServiceGrpc.DocumentServiceImpl
         }
     }
 
+    private ListDocumentsResponse listDocumentsByPage(ListDocumentsRequest request, Document.Status status,
+                                                      String department, int size, boolean summary) {
+        // Создаем запрос пагинации
+        PageRequest pageRequest = PageRequest.of(request.getPage() > 0 ? request.getPage() : 0, size);
+
+        List<DocumentResponse> documentResponses;
+        if (summary) {
+            Slice<DocumentSummary> summaries = documentQueryService.findSummaryPage(status, department, pageRequest);
+            documentResponses = documentResponseAssembler.toSummaryResponses(summaries.getContent());
+        } else {
+            // Связанные данные загружаются пакетно для всей страницы
+            Slice<Document> documents = documentQueryService.findPage(status, department, pageRequest);
+            documentResponses = documentResponseAssembler.toDocumentResponses(documents.getContent());
+        }
+
+        // Общее число документов берется из счетчиков, а не из COUNT(*)
+        long totalElements = documentQueryService.count(status, department);
+        return ListDocumentsResponse.newBuilder()
+                .addAllDocuments(documentResponses)
+                .setTotalPages((int) ((totalElements + size - 1) / size))
+                .setTotalElements(totalElements)
+                .build();
+    }
+
+    private ListDocumentsResponse searchDocuments(ListDocumentsRequest request, Document.Status status,
+                                                  String department, int size, boolean summary) {
+        // Поиск по индексу возвращает идентификаторы в порядке релевантности
+        DocumentSearchService.SearchResult result = documentSearchService.search(
+                request.getSearchQuery(), status, department, request.getPage() > 0 ? request.getPage() : 0, size);
+
+        List<DocumentResponse> documentResponses;
+        if (summary) {
+            Map<Long, DocumentSummary> summariesById = documentRepository.findSummariesByIdIn(result.documentIds()).stream()
+                    .collect(Collectors.toMap(DocumentSummary::getId, Function.identity()));
+            documentResponses = documentResponseAssembler.toSummaryResponses(result.documentIds().stream()
+                    .map(summariesById::get)
+                    .filter(Objects::nonNull)
+                    .toList());
+        } else {
+            Map<Long, Document> documentsById = documentRepository.findByIdIn(result.documentIds()).stream()
+                    .collect(Collectors.toMap(Document::getId, Function.identity()));
+            documentResponses = documentResponseAssembler.toDocumentResponses(result.documentIds().stream()
+                    .map(documentsById::get)
+                    .filter(Objects::nonNull)
+                    .toList());
+        }
+
+        return ListDocumentsResponse.newBuilder()
+                .addAllDocuments(documentResponses)
+                .setTotalPages((int) ((result.totalHits() + size - 1) / size))
+                .setTotalElements(result.totalHits())
+                .build();
+    }
+
+    private ListDocumentsResponse listDocumentsByCursor(ListDocumentsRequest request, Document.Status status,
+                                                        String department, int size, boolean summary) {
+        ScrollPosition position = DocumentPageToken.decode(request.getPageToken());
+        DocumentStreamer.Batch batch = loadBatch(status, department, position, size, summary);
+
+        ListDocumentsResponse.Builder responseBuilder = ListDocumentsResponse.newBuilder()
+                .addAllDocuments(batch.documents());
+
+        if (batch.nextPosition() != null) {
+            responseBuilder.setNextPageToken(DocumentPageToken.encode(batch.documents().get(batch.documents().size() - 1)));
+        }
+
+        // Подсчет выполняется только по явному запросу клиента
+        if (request.getIncludeTotal()) {
+            long totalElements = documentQueryService.count(status, department);
+            responseBuilder.setTotalElements(totalElements)
+                    .setTotalPages((int) ((totalElements + size - 1) / size));
+        }
+
+        return responseBuilder.build();
+    }
+
+    // Курсорная выборка пакета документов в нужном представлении
+    private DocumentStreamer.Batch loadBatch(Document.Status status, String department, ScrollPosition position,
+                                             int size, boolean summary) {
+        if (summary) {
+            Window<DocumentSummary> window = documentQueryService.findSummaryWindow(status, department, position, size);
+            return new DocumentStreamer.Batch(
+                    documentResponseAssembler.toSummaryResponses(window.getContent()),
+                    window.hasNext() && !window.isEmpty() ? window.positionAt(window.size() - 1) : null);
+        }
+        Window<Document> window = documentQueryService.findWindow(status, department, position, size);
+        return new DocumentStreamer.Batch(
+                documentResponseAssembler.toDocumentResponses(window.getContent()),
+                window.hasNext() && !window.isEmpty() ? window.positionAt(window.size() - 1) : null);
+    }
+
+    @Override
+    public void streamDocuments(ListDocumentsRequest request, StreamObserver<DocumentResponse> responseObserver) {
+        try {
+            if (!request.getSearchQuery().isBlank()) {
+                throw Status.INVALID_ARGUMENT
+                        .withDescription("Поиск не поддерживается в потоковой выгрузке")
+                        .asRuntimeException();
+            }
+
+            boolean summary = request.getView() == DocumentView.DOCUMENT_VIEW_SUMMARY;
+            Document.Status status = !request.getStatus().isEmpty() ? Document.Status.valueOf(request.getStatus()) : null;
+            String department = !request.getDepartment().isEmpty() ? request.getDepartment() : null;
+            ScrollPosition position = DocumentPageToken.decode(request.getPageToken());
+
+            // Выдача управляется готовностью клиента (onReady), а не циклом в потоке вызова
+            new DocumentStreamer(
+                    (ServerCallStreamObserver<DocumentResponse>) responseObserver,
+                    nextPosition -> loadBatch(status, department, nextPosition, STREAM_BATCH_SIZE, summary),
+                    position
+            ).start();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при потоковой выдаче документов: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public void downloadDocumentFile(DownloadDocumentFileRequest request, StreamObserver<FileChunk> responseObserver) {
+        try {
+            if (request.getOffset() < 0 || request.getLength() < 0) {
+                throw Status.INVALID_ARGUMENT
+                        .withDescription("Некорректный диапазон файла")
+                        .asRuntimeException();
+            }
+            DocumentFileInfo fileInfo = documentRepository.findFileInfoById(request.getDocumentId())
+                    .orElseThrow(() -> Status.NOT_FOUND
+                            .withDescription("Документ не найден")
+                            .asRuntimeException());
+
+            streamStoredFile((ServerCallStreamObserver<FileChunk>) responseObserver, fileInfo.getFileDigest(),
+                    fileInfo.getFilePath(), request.getOffset(), request.getLength());
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+        } catch (NoSuchFileException e) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Файл документа не найден")
+                    .asRuntimeException());
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при чтении файла документа: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    /**
+     * Выдача файла из хранилища частями по готовности клиента; источник закрывается по завершении или отмене
+     */
+    private void streamStoredFile(ServerCallStreamObserver<FileChunk> serverObserver, String digest, String filePath,
+                                  long offset, long length) throws IOException {
+        Optional<Path> localPath = contentAddressedFileStore.localPath(digest, filePath);
+        DocumentFileStreamer streamer;
+        if (localPath.isPresent()) {
+            streamer = forChannel(serverObserver, FileChannel.open(localPath.get(), StandardOpenOption.READ),
+                    offset, length);
+        } else {
+            // Удаленное хранилище или сжатый файл: читается только запрошенный диапазон
+            long totalSize = contentAddressedFileStore.size(digest, filePath);
+            long start = Math.min(offset, totalSize);
+            InputStream in = start < totalSize
+                    ? contentAddressedFileStore.open(digest, filePath, start, length > 0 ? length : -1)
+                    : InputStream.nullInputStream();
+            try {
+                streamer = DocumentFileStreamer.forStream(serverObserver, in, totalSize, start, length);
+            } catch (RuntimeException e) {
+                closeQuietly(in, e);
+                throw e;
+            }
+        }
+        streamer.start();
+    }
+
+    /**
+     * Выдача файла из открытого канала; если выдачу не удалось подготовить, канал закрывается здесь,
+     * иначе его закрывает выдача
+     */
+    private static DocumentFileStreamer forChannel(ServerCallStreamObserver<FileChunk> serverObserver,
+                                                   FileChannel channel, long offset, long length) throws IOException {
+        try {
+            return DocumentFileStreamer.forChannel(serverObserver, channel, offset, length);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel, e);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource, Exception failure) {
+        try {
+            resource.close();
+        } catch (Exception closeError) {
+            failure.addSuppressed(closeError);
+        }
+    }
+
+    @Override
+    public StreamObserver<UploadRevisionRequest> uploadRevision(StreamObserver<RevisionResponse> responseObserver) {
+        // Пользователь фиксируется при открытии потока: части приходят в других потоках
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = (User) authentication.getPrincipal();
+
+        return DocumentUploadHandler.forRevision(
+                (ServerCallStreamObserver<RevisionResponse>) responseObserver,
+                contentAddressedFileStore.getTempDir(),
+                maxUploadSize,
+                (metadata, tempFile, fileSize, digest) -> {
+                    try {
+                        DocumentRevision revision = documentRevisionService.uploadRevision(currentUser,
+                                metadata.getDocumentId(), metadata.getFileName(), metadata.getFileType(),
+                                metadata.getComment(), tempFile, fileSize, digest);
+                        return documentResponseAssembler.toRevisionResponse(revision);
+                    } catch (NoSuchElementException e) {
+                        throw Status.NOT_FOUND.withDescription(e.getMessage()).asRuntimeException();
+                    } catch (IllegalStateException e) {
+                        throw Status.FAILED_PRECONDITION.withDescription(e.getMessage()).asRuntimeException();
+                    }
+                }
+        ).start();
+    }
+
+    @Override
+    public void getRevision(GetRevisionRequest request, StreamObserver<FileChunk> responseObserver) {
+        try {
+            if (request.getOffset() < 0 || request.getLength() < 0) {
+                throw Status.INVALID_ARGUMENT
+                        .withDescription("Некорректный диапазон файла")
+                        .asRuntimeException();
+            }
+            DocumentRevisionService.RevisionContent content = documentRevisionService.openRevision(
+                    request.getDocumentId(), request.getRevision());
+            ServerCallStreamObserver<FileChunk> serverObserver = (ServerCallStreamObserver<FileChunk>) responseObserver;
+            if (content.reconstructedFile() != null) {
+                // Восстановленный файл удаляется при закрытии канала
+                FileChannel channel;
+                try {
+                    channel = FileChannel.open(content.reconstructedFile(),
+                            StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+                } catch (IOException e) {
+                    Files.deleteIfExists(content.reconstructedFile());
+                    throw e;
+                }
+                forChannel(serverObserver, channel, request.getOffset(), request.getLength()).start();
+            } else {
+                streamStoredFile(serverObserver, content.digest(), null, request.getOffset(), request.getLength());
+            }
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+        } catch (NoSuchElementException e) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+        } catch (NoSuchFileException e) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Файл редакции не найден")
+                    .asRuntimeException());
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при чтении редакции документа: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public void getDocumentPreview(GetDocumentPreviewRequest request, StreamObserver<DocumentPreviewResponse> responseObserver) {
+        try {
+            DocumentFileInfo fileInfo = documentRepository.findFileInfoById(request.getDocumentId())
+                    .orElseThrow(() -> Status.NOT_FOUND
+                            .withDescription("Документ не найден")
+                            .asRuntimeException());
+            if (fileInfo.getStatus() == Document.Status.PROCESSING) {
+                throw Status.FAILED_PRECONDITION
+                        .withDescription("Документ находится в обработке")
+                        .asRuntimeException();
+            }
+
+            byte[] preview = documentPreviewService.getPreview(fileInfo.getId(), fileInfo.getFileDigest(),
+                            fileInfo.getFilePath(), fileInfo.getFileType())
+                    .orElseThrow(() -> Status.NOT_FOUND
+                            .withDescription("Предпросмотр для файла документа недоступен")
+                            .asRuntimeException());
+
+            responseObserver.onNext(DocumentPreviewResponse.newBuilder()
+                    .setImage(ByteString.copyFrom(preview))
+                    .setContentType("image/png")
+                    .build());
+            responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+        } catch (NoSuchFileException e) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Файл документа не найден")
+                    .asRuntimeException());
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при построении предпросмотра: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public void getDocumentStats(GetDocumentStatsRequest request, StreamObserver<DocumentStatsResponse> responseObserver) {
+        try {
+            String department = !request.getDepartment().isEmpty() ? request.getDepartment() : null;
+
+            // Статистика читается из таблицы счетчиков без обхода документов
+            DocumentStatsResponse.Builder responseBuilder = DocumentStatsResponse.newBuilder();
+            long total = 0;
+            for (DocumentCounter counter : documentCounterService.getCounters(department)) {
+                responseBuilder.addCounters(DocumentCounterResponse.newBuilder()
+                        .setDepartment(counter.getDepartment())
+                        .setStatus(counter.getStatus().name())
+                        .setCount(counter.getCount())
+                        .build());
+                total += counter.getCount();
+            }
+
+            responseObserver.onNext(responseBuilder.setTotal(total).build());
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при получении статистики документов: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
     @Override
     public void createDocument(CreateDocumentRequest request, StreamObserver<DocumentResponse> responseObserver) {
         try {
@@ -102,47 +553,31 @@ public class DocumentServiceImpl extends DocumentServiceGrpc.DocumentServiceImpl
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             User currentUser = (User) authentication.getPrincipal();
 
-            // Создаем временный файл из содержимого
-            String fileName = UUID.randomUUID().toString() + "_" + request.getFileName();
-            String filePath = System.getProperty("user.dir") + "/uploads/" + fileName;
-            
-            // Убедимся, что директория существует
-            new java.io.File(System.getProperty("user.dir") + "/uploads/").mkdirs();
-            
-            // Сохраняем файл
-            java.nio.file.Files.write(java.nio.file.Paths.get(filePath), request.getFileContent().toByteArray());
-
-            // Создаем документ
-            Document document = Document.builder()
-                    .title(request.getTitle())
-                    .description(request.getDescription())
-                    .department(request.getDepartment())
-                    .author(currentUser)
-                    .status(Document.Status.DRAFT)
-                    .filePath(filePath)
-                    .fileName(request.getFileName())
-                    .fileType(request.getFileType())
-                    .fileSize((long) request.getFileContent().size())
-                    .createdAt(LocalDateTime.now())
-                    .updatedAt(LocalDateTime.now())
-                    .build();
-
-            Document savedDocument = documentRepository.save(document);
-
-            // Добавляем запись в историю статусов
-            StatusHistory statusHistory = StatusHistory.builder()
-                    .document(savedDocument)
-                    .user(currentUser)
-                    .status(Document.Status.DRAFT)
-                    .comment("Документ создан")
-                    .createdAt(LocalDateTime.now())
-                    .build();
-            statusHistoryService.saveStatusHistory(statusHistory);
+            // Файл только сохраняется во временный каталог; хэш и остальная обработка выполняются асинхронно
+            acquireIngestionSlot();
+            Path stagedFile = null;
+            Document savedDocument;
+            try {
+                stagedFile = Files.createTempFile(contentAddressedFileStore.getTempDir(), "ingest-", ".part");
+                Files.write(stagedFile, request.getFileContent().toByteArray());
+                savedDocument = saveProcessingDocument(currentUser, request.getTitle(), request.getDescription(),
+                        request.getDepartment(), request.getFileName(), request.getFileType(), stagedFile,
+                        request.getFileContent().size());
+            } catch (Exception e) {
+                documentIngestionPipeline.release();
+                if (stagedFile != null) {
+                    Files.deleteIfExists(stagedFile);
+                }
+                throw e;
+            }
+            documentIngestionPipeline.submit(savedDocument.getId(), null);
 
             // Возвращаем ответ
-            DocumentResponse response = convertToDocumentResponse(savedDocument);
+            DocumentResponse response = documentResponseAssembler.toDocumentResponse(savedDocument);
             responseObserver.onNext(response);
             responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
         } catch (Exception e) {
             responseObserver.onError(Status.INTERNAL
                     .withDescription("Ошибка при создании документа: " + e.getMessage())
@@ -151,34 +586,138 @@ public class DocumentServiceImpl extends DocumentServiceGrpc.DocumentServiceImpl
     }
 
     @Override
-    public void updateDocumentStatus(UpdateStatusRequest request, StreamObserver<DocumentResponse> responseObserver) {
-        try {
-            // Получаем текущего пользователя
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            User currentUser = (User) authentication.getPrincipal();
+    public StreamObserver<UploadDocumentRequest> uploadDocument(StreamObserver<DocumentResponse> responseObserver) {
+        // Пользователь фиксируется при открытии потока: части приходят в других потоках
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = (User) authentication.getPrincipal();
+
+        return DocumentUploadHandler.forDocument(
+                (ServerCallStreamObserver<DocumentResponse>) responseObserver,
+                contentAddressedFileStore.getTempDir(),
+                maxUploadSize,
+                (metadata, tempFile, fileSize, digest) -> {
+                    // Файл целиком записан и хэширован при приеме: конвейер не будет считать хэш повторно
+                    try {
+                        acquireIngestionSlot();
+                    } catch (StatusRuntimeException e) {
+                        Files.deleteIfExists(tempFile);
+                        throw e;
+                    }
+                    Document savedDocument;
+                    try {
+                        savedDocument = saveProcessingDocument(currentUser, metadata.getTitle(), metadata.getDescription(),
+                                metadata.getDepartment(), metadata.getFileName(), metadata.getFileType(), tempFile,
+                                fileSize);
+                    } catch (Exception e) {
+                        documentIngestionPipeline.release();
+                        Files.deleteIfExists(tempFile);
+                        throw e;
+                    }
+                    documentIngestionPipeline.submit(savedDocument.getId(), digest);
+                    return documentResponseAssembler.toDocumentResponse(savedDocument);
+                }
+        ).start();
+    }
 
-            // Получаем документ
-            Document document = documentService.getDocumentById(request.getDocumentId());
+    private void acquireIngestionSlot() {
+        if (!documentIngestionPipeline.tryAcquire()) {
+            throw Status.RESOURCE_EXHAUSTED
+                    .withDescription("Слишком много документов в обработке, повторите позже")
+                    .asRuntimeException();
+        }
+    }
 
-            // Обновляем статус
-            document.setStatus(Document.Status.valueOf(request.getStatus()));
-            document.setUpdatedAt(LocalDateTime.now());
-            Document updatedDocument = documentRepository.save(document);
+    /**
+     * Сохранение документа в статусе PROCESSING со ссылкой на временный файл.
+     * Конвейер обработки перенесет файл в хранилище и переведет документ в DRAFT.
+     */
+    private Document saveProcessingDocument(User author, String title, String description, String department,
+                                            String fileName, String fileType, Path stagedFile, long fileSize) {
+        // Документ, история и счетчики сохраняются в одной транзакции
+        return transactionTemplate.execute(tx -> {
+            Document document = Document.builder()
+                    .title(title)
+                    .description(description)
+                    .department(department)
+                    .author(author)
+                    .status(Document.Status.PROCESSING)
+                    .filePath(stagedFile.toString())
+                    .fileName(fileName)
+                    .fileType(fileType)
+                    .fileSize(fileSize)
+                    .createdAt(LocalDateTime.now())
+                    .updatedAt(LocalDateTime.now())
+                    .build();
+            Document saved = documentRepository.save(document);
 
             // Добавляем запись в историю статусов
             StatusHistory statusHistory = StatusHistory.builder()
-                    .document(updatedDocument)
-                    .user(currentUser)
-                    .status(Document.Status.valueOf(request.getStatus()))
-                    .comment(request.getComment())
+                    .document(saved)
+                    .user(author)
+                    .status(Document.Status.PROCESSING)
+                    .comment("Документ загружен, выполняется обработка")
                     .createdAt(LocalDateTime.now())
                     .build();
             statusHistoryService.saveStatusHistory(statusHistory);
+            documentCounterService.documentCreated(saved.getDepartment(), saved.getStatus());
+            return saved;
+        });
+    }
+
+    @Override
+    public void updateDocumentStatus(UpdateStatusRequest request, StreamObserver<DocumentResponse> responseObserver) {
+        try {
+            // Получаем текущего пользователя
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            Document updatedDocument = transactionTemplate.execute(tx -> {
+                // Строка документа блокируется до чтения статуса: одновременные переходы из одного статуса
+                // иначе оба уменьшат его счетчик
+                Document document = documentRepository.findByIdForUpdate(request.getDocumentId())
+                        .orElseThrow(() -> Status.NOT_FOUND
+                                .withDescription("Документ не найден")
+                                .asRuntimeException());
+                Document.Status oldStatus = document.getStatus();
+                Document.Status newStatus = Document.Status.valueOf(request.getStatus());
+                // Статусами PROCESSING и FAILED управляет только конвейер обработки
+                if (oldStatus == Document.Status.PROCESSING || newStatus == Document.Status.PROCESSING) {
+                    throw Status.FAILED_PRECONDITION
+                            .withDescription("Документ находится в обработке")
+                            .asRuntimeException();
+                }
+                if (oldStatus == Document.Status.FAILED || newStatus == Document.Status.FAILED) {
+                    throw Status.FAILED_PRECONDITION
+                            .withDescription("Файл документа не удалось обработать")
+                            .asRuntimeException();
+                }
+
+                // Обновляем статус
+                document.setStatus(newStatus);
+                document.setUpdatedAt(LocalDateTime.now());
+                Document saved = documentRepository.save(document);
+
+                // Добавляем запись в историю статусов
+                StatusHistory statusHistory = StatusHistory.builder()
+                        .document(saved)
+                        .user(currentUser)
+                        .status(newStatus)
+                        .comment(request.getComment())
+                        .createdAt(LocalDateTime.now())
+                        .build();
+                statusHistoryService.saveStatusHistory(statusHistory);
+                documentCounterService.statusChanged(saved.getDepartment(), oldStatus, newStatus);
+                documentCache.invalidate(saved.getId());
+                return saved;
+            });
+            documentSearchService.indexDocumentAsync(updatedDocument.getId());
 
             // Возвращаем ответ
-            DocumentResponse response = convertToDocumentResponse(updatedDocument);
+            DocumentResponse response = documentResponseAssembler.toDocumentResponse(updatedDocument);
             responseObserver.onNext(response);
             responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
         } catch (Exception e) {
             responseObserver.onError(Status.INTERNAL
                     .withDescription("Ошибка при обновлении статуса документа: " + e.getMessage())
@@ -193,118 +732,41 @@ public class DocumentServiceImpl extends DocumentServiceGrpc.DocumentServiceImpl
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             User currentUser = (User) authentication.getPrincipal();
 
-            // Получаем документ
-            Document document = documentService.getDocumentById(request.getDocumentId());
-
-            // Создаем комментарий
-            Comment comment = Comment.builder()
-                    .document(document)
-                    .user(currentUser)
-                    .text(request.getText())
-                    .createdAt(LocalDateTime.now())
-                    .build();
-            Comment savedComment = commentService.saveComment(comment);
+            Comment savedComment = transactionTemplate.execute(tx -> {
+                // Строка документа блокируется: сохранение пишет все колонки, в том числе файл,
+                // который параллельно может заменить загрузка редакции
+                Document document = documentRepository.findByIdForUpdate(request.getDocumentId())
+                        .orElseThrow(() -> Status.NOT_FOUND
+                                .withDescription("Документ не найден")
+                                .asRuntimeException());
+
+                // Создаем комментарий
+                Comment comment = Comment.builder()
+                        .document(document)
+                        .user(currentUser)
+                        .text(request.getText())
+                        .createdAt(LocalDateTime.now())
+                        .build();
+                Comment saved = commentService.saveComment(comment);
+
+                // Комментарий меняет версию документа (updatedAt), от нее зависят кэши ответов
+                document.setUpdatedAt(LocalDateTime.now());
+                documentRepository.save(document);
+                documentCache.invalidate(document.getId());
+                return saved;
+            });
+            documentSearchService.indexDocumentAsync(request.getDocumentId());
 
             // Возвращаем ответ
-            CommentResponse response = convertToCommentResponse(savedComment);
+            CommentResponse response = documentResponseAssembler.toCommentResponse(savedComment);
             responseObserver.onNext(response);
             responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
         } catch (Exception e) {
             responseObserver.onError(Status.INTERNAL
                     .withDescription("Ошибка при добавлении комментария: " + e.getMessage())
                     .asRuntimeException());
         }
     }
-
-    // Вспомогательные методы для конвертации сущностей в gRPC ответы
-
-    private DocumentResponse convertToDocumentResponse(Document document) {
-        DocumentResponse.Builder responseBuilder = DocumentResponse.newBuilder()
-                .setId(document.getId())
-                .setTitle(document.getTitle())
-                .setDescription(document.getDescription() != null ? document.getDescription() : "")
-                .setDepartment(document.getDepartment())
-                .setAuthor(convertToUserResponse(document.getAuthor()))
-                .setStatus(document.getStatus().name())
-                .setFileName(document.getFileName())
-                .setFileType(document.getFileType())
-                .setFileSize(document.getFileSize())
-                .setFileUrl("/api/documents/" + document.getId() + "/file");
-
-        // Добавляем timestamp'ы
-        if (document.getCreatedAt() != null) {
-            Instant createdInstant = document.getCreatedAt().toInstant(ZoneOffset.UTC);
-            responseBuilder.setCreatedAt(Timestamp.newBuilder()
-                    .setSeconds(createdInstant.getEpochSecond())
-                    .setNanos(createdInstant.getNano())
-                    .build());
-        }
-
-        if (document.getUpdatedAt() != null) {
-            Instant updatedInstant = document.getUpdatedAt().toInstant(ZoneOffset.UTC);
-            responseBuilder.setUpdatedAt(Timestamp.newBuilder()
-                    .setSeconds(updatedInstant.getEpochSecond())
-                    .setNanos(updatedInstant.getNano())
-                    .build());
-        }
-
-        // Добавляем историю статусов
-        List<StatusHistory> statusHistoryList = statusHistoryService.getStatusHistoryByDocument(document);
-        for (StatusHistory history : statusHistoryList) {
-            responseBuilder.addStatusHistory(convertToStatusHistoryResponse(history));
-        }
-
-        // Добавляем комментарии
-        List<Comment> comments = commentService.getCommentsByDocument(document);
-        for (Comment comment : comments) {
-            responseBuilder.addComments(convertToCommentResponse(comment));
-        }
-
-        return responseBuilder.build();
-    }
-
-    private UserResponse convertToUserResponse(User user) {
-        return UserResponse.newBuilder()
-                .setId(user.getId())
-                .setName(user.getName())
-                .setEmail(user.getEmail())
-                .setDepartment(user.getDepartment())
-                .setRole(user.getRole().name())
-                .build();
-    }
-
-    private StatusHistoryResponse convertToStatusHistoryResponse(StatusHistory history) {
-        StatusHistoryResponse.Builder responseBuilder = StatusHistoryResponse.newBuilder()
-                .setId(history.getId())
-                .setUser(convertToUserResponse(history.getUser()))
-                .setStatus(history.getStatus().name())
-                .setComment(history.getComment() != null ? history.getComment() : "");
-
-        if (history.getCreatedAt() != null) {
-            Instant dateInstant = history.getCreatedAt().toInstant(ZoneOffset.UTC);
-            responseBuilder.setDate(Timestamp.newBuilder()
-                    .setSeconds(dateInstant.getEpochSecond())
-                    .setNanos(dateInstant.getNano())
-                    .build());
-        }
-
-        return responseBuilder.build();
-    }
-
-    private CommentResponse convertToCommentResponse(Comment comment) {
-        CommentResponse.Builder responseBuilder = CommentResponse.newBuilder()
-                .setId(comment.getId())
-                .setUser(convertToUserResponse(comment.getUser()))
-                .setText(comment.getText());
-
-        if (comment.getCreatedAt() != null) {
-            Instant dateInstant = comment.getCreatedAt().toInstant(ZoneOffset.UTC);
-            responseBuilder.setDate(Timestamp.newBuilder()
-                    .setSeconds(dateInstant.getEpochSecond())
-                    .setNanos(dateInstant.getNano())
-                    .build());
-        }
-
-        return responseBuilder.build();
-    }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package ru.centerinvest.sctd.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Потоковая выдача документов с учетом обратного давления gRPC.
+ * Документы читаются из БД пакетами по курсору только тогда, когда клиент готов принимать данные,
+ * поэтому в памяти находится не более одного пакета независимо от размера выборки.
+ */
+class DocumentStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStreamer.class);
+
+    /**
+     * Пакет собранных ответов и позиция следующего пакета (null, если пакетов больше нет)
+     */
+    record Batch(List<DocumentResponse> documents, ScrollPosition nextPosition) {
+    }
+
+    interface BatchLoader {
+        Batch load(ScrollPosition position);
+    }
+
+    private final ServerCallStreamObserver<DocumentResponse> responseObserver;
+    private final BatchLoader batchLoader;
+
+    private ScrollPosition position;
+    private Iterator<DocumentResponse> batch = Collections.emptyIterator();
+    private boolean hasMore = true;
+    private boolean completed;
+    private volatile boolean cancelled;
+
+    DocumentStreamer(ServerCallStreamObserver<DocumentResponse> responseObserver,
+                     BatchLoader batchLoader,
+                     ScrollPosition startPosition) {
+        this.responseObserver = responseObserver;
+        this.batchLoader = batchLoader;
+        this.position = startPosition;
+    }
+
+    void start() {
+        responseObserver.setOnCancelHandler(this::cancel);
+        responseObserver.setOnReadyHandler(this::onReady);
+    }
+
+    // gRPC вызывает обработчик последовательно для одного вызова
+    private void onReady() {
+        if (completed || cancelled) {
+            return;
+        }
+        try {
+            while (responseObserver.isReady() && !cancelled) {
+                if (!batch.hasNext()) {
+                    if (!hasMore) {
+                        completed = true;
+                        responseObserver.onCompleted();
+                        return;
+                    }
+                    loadNextBatch();
+                    continue;
+                }
+                responseObserver.onNext(batch.next());
+            }
+        } catch (Exception e) {
+            completed = true;
+            logger.error("Ошибка при потоковой выдаче документов: {}", e.getMessage(), e);
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при потоковой выдаче документов: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    private void loadNextBatch() {
+        Batch next = batchLoader.load(position);
+        batch = next.documents().iterator();
+        hasMore = next.nextPosition() != null;
+        position = next.nextPosition();
+    }
+
+    // После отмены клиентом чтение из БД прекращается
+    private void cancel() {
+        cancelled = true;
+        batch = Collections.emptyIterator();
+    }
+}
@@ -0,0 +1,196 @@
+package ru.centerinvest.sctd.grpc;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.centerinvest.sctd.service.ContentAddressedFileStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.function.Function;
+
+/**
+ * Прием потоковой загрузки файла (документа или его редакции).
+ * Первое сообщение потока — метаданные, далее — части файла.
+ * Каждая часть сразу дописывается во временный файл через FileChannel, следующая часть
+ * запрашивается только после записи предыдущей, поэтому в памяти находится не более одной части.
+ * SHA-256 считается по ходу записи, повторного чтения файла не требуется.
+ * Размер файла ограничен: часть, после которой он превысил бы предел, не записывается.
+ */
+class DocumentUploadHandler<T, M, R> implements StreamObserver<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentUploadHandler.class);
+
+    /**
+     * Сохранение по завершенной загрузке.
+     * Файл переходит во владение сохранения: оно переносит или удаляет его, в том числе при ошибке.
+     */
+    interface UploadCompletion<M, R> {
+        R complete(M metadata, Path file, long fileSize, String digest) throws Exception;
+    }
+
+    private final ServerCallStreamObserver<R> responseObserver;
+    private final Path tempDir;
+    private final long maxFileSize;
+    private final Function<T, M> metadataOf;
+    private final Function<T, ByteString> chunkOf;
+    private final UploadCompletion<M, R> completion;
+
+    private M metadata;
+    private Path tempFile;
+    private FileChannel channel;
+    private long fileSize;
+    private final MessageDigest digest = ContentAddressedFileStore.newDigest();
+    private boolean failed;
+
+    /**
+     * @param metadataOf метаданные из сообщения или null, если это не метаданные
+     * @param chunkOf    часть файла из сообщения или null, если это не часть файла
+     */
+    DocumentUploadHandler(ServerCallStreamObserver<R> responseObserver,
+                          Path tempDir,
+                          long maxFileSize,
+                          Function<T, M> metadataOf,
+                          Function<T, ByteString> chunkOf,
+                          UploadCompletion<M, R> completion) {
+        this.responseObserver = responseObserver;
+        this.tempDir = tempDir;
+        this.maxFileSize = maxFileSize;
+        this.metadataOf = metadataOf;
+        this.chunkOf = chunkOf;
+        this.completion = completion;
+    }
+
+    static DocumentUploadHandler<UploadDocumentRequest, UploadDocumentMetadata, DocumentResponse> forDocument(
+            ServerCallStreamObserver<DocumentResponse> responseObserver, Path tempDir, long maxFileSize,
+            UploadCompletion<UploadDocumentMetadata, DocumentResponse> completion) {
+        return new DocumentUploadHandler<>(responseObserver, tempDir, maxFileSize,
+                request -> request.hasMetadata() ? request.getMetadata() : null,
+                request -> request.getPayloadCase() == UploadDocumentRequest.PayloadCase.CHUNK ? request.getChunk() : null,
+                completion);
+    }
+
+    static DocumentUploadHandler<UploadRevisionRequest, UploadRevisionMetadata, RevisionResponse> forRevision(
+            ServerCallStreamObserver<RevisionResponse> responseObserver, Path tempDir, long maxFileSize,
+            UploadCompletion<UploadRevisionMetadata, RevisionResponse> completion) {
+        return new DocumentUploadHandler<>(responseObserver, tempDir, maxFileSize,
+                request -> request.hasMetadata() ? request.getMetadata() : null,
+                request -> request.getPayloadCase() == UploadRevisionRequest.PayloadCase.CHUNK ? request.getChunk() : null,
+                completion);
+    }
+
+    StreamObserver<T> start() {
+        // Ручное управление потоком: клиент не может прислать больше, чем мы успели записать
+        responseObserver.disableAutoRequest();
+        responseObserver.setOnCancelHandler(this::cleanup);
+        responseObserver.request(1);
+        return this;
+    }
+
+    @Override
+    public void onNext(T request) {
+        if (failed) {
+            return;
+        }
+        try {
+            M requestMetadata = metadataOf.apply(request);
+            ByteString chunk = chunkOf.apply(request);
+            if (requestMetadata != null) {
+                if (metadata != null) {
+                    throw Status.INVALID_ARGUMENT.withDescription("Метаданные уже переданы").asRuntimeException();
+                }
+                metadata = requestMetadata;
+                Files.createDirectories(tempDir);
+                tempFile = Files.createTempFile(tempDir, "upload-", ".part");
+                channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+            } else if (chunk != null) {
+                if (metadata == null) {
+                    throw Status.INVALID_ARGUMENT.withDescription("Первым сообщением должны быть метаданные").asRuntimeException();
+                }
+                if (fileSize + chunk.size() > maxFileSize) {
+                    throw Status.RESOURCE_EXHAUSTED
+                            .withDescription("Размер файла превышает допустимый (" + maxFileSize + " байт)")
+                            .asRuntimeException();
+                }
+                ByteBuffer buffer = chunk.asReadOnlyByteBuffer();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    fileSize += channel.write(buffer);
+                }
+            } else {
+                throw Status.INVALID_ARGUMENT.withDescription("Пустое сообщение загрузки").asRuntimeException();
+            }
+            responseObserver.request(1);
+        } catch (StatusRuntimeException e) {
+            fail(e);
+        } catch (Exception e) {
+            fail(Status.INTERNAL
+                    .withDescription("Ошибка при записи файла: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        logger.warn("Загрузка файла прервана клиентом: {}", t.getMessage());
+        cleanup();
+    }
+
+    @Override
+    public void onCompleted() {
+        if (failed) {
+            return;
+        }
+        try {
+            if (metadata == null) {
+                throw Status.INVALID_ARGUMENT.withDescription("Не переданы метаданные загрузки").asRuntimeException();
+            }
+            channel.force(false);
+            channel.close();
+            channel = null;
+
+            // После передачи файл не удаляется при ошибке: на него уже может ссылаться сохраненный документ
+            Path file = tempFile;
+            tempFile = null;
+            R response = completion.complete(metadata, file, fileSize, ContentAddressedFileStore.toHex(digest));
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            fail(e);
+        } catch (Exception e) {
+            fail(Status.INTERNAL
+                    .withDescription("Ошибка при сохранении загруженного файла: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    private void fail(StatusRuntimeException e) {
+        failed = true;
+        cleanup();
+        responseObserver.onError(e);
+    }
+
+    private void cleanup() {
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+                tempFile = null;
+            }
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить временный файл загрузки: {}", e.getMessage());
+        }
+    }
+}
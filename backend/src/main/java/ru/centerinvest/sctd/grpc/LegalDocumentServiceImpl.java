@@ -1,9 +1,11 @@
 package ru.centerinvest.sctd.grpc;
 
 import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
-import lombok.RequiredArgsConstructor;
 import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import ru.centerinvest.sctd.dto.LegalDocumentDto;
@@ -11,22 +13,37 @@ import ru.centerinvest.sctd.model.Document;
 import ru.centerinvest.sctd.model.StatusHistory;
 import ru.centerinvest.sctd.model.User;
 import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.service.LegalDocumentBatchImporter;
 import ru.centerinvest.sctd.service.LegalDocumentService;
 import ru.centerinvest.sctd.service.StatusHistoryService;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @GrpcService
-@RequiredArgsConstructor
 public class LegalDocumentServiceImpl extends LegalDocumentServiceGrpc.LegalDocumentServiceImplBase {
 
     private final LegalDocumentService legalDocumentService;
+    private final LegalDocumentBatchImporter legalDocumentBatchImporter;
     private final DocumentRepository documentRepository;
     private final StatusHistoryService statusHistoryService;
+    private final int maxBatchItems;
+
+    public LegalDocumentServiceImpl(LegalDocumentService legalDocumentService,
+                                    LegalDocumentBatchImporter legalDocumentBatchImporter,
+                                    DocumentRepository documentRepository,
+                                    StatusHistoryService statusHistoryService,
+                                    @Value("${legal.import.max-batch-items:500}") int maxBatchItems) {
+        this.legalDocumentService = legalDocumentService;
+        this.legalDocumentBatchImporter = legalDocumentBatchImporter;
+        this.documentRepository = documentRepository;
+        this.statusHistoryService = statusHistoryService;
+        this.maxBatchItems = maxBatchItems;
+    }
 
     @Override
     public void searchLegalDocuments(SearchLegalDocumentsRequest request, StreamObserver<SearchLegalDocumentsResponse> responseObserver) {
@@ -35,8 +52,8 @@ public class LegalDocumentServiceImpl extends LegalDocumentServiceGrpc.LegalDocu
             List<LegalDocumentDto> searchResults = legalDocumentService.searchLegalDocuments(
                     request.getQuery(),
                     request.getDocumentType(),
-                    request.getIssuedAfter(),
-                    request.getIssuedBefore()
+                    request.hasIssuedAfter() ? toLocalDate(request.getIssuedAfter()) : null,
+                    request.hasIssuedBefore() ? toLocalDate(request.getIssuedBefore()) : null
             );
             
             // Преобразуем результаты в формат gRPC
@@ -89,6 +106,57 @@ public class LegalDocumentServiceImpl extends LegalDocumentServiceGrpc.LegalDocu
         }
     }
 
+    @Override
+    public void batchImportLegalDocuments(BatchImportLegalRequest request, StreamObserver<BatchImportLegalResult> responseObserver) {
+        try {
+            if (request.getItemsCount() == 0 || request.getItemsCount() > maxBatchItems) {
+                throw Status.INVALID_ARGUMENT
+                        .withDescription("Пакет должен содержать от 1 до " + maxBatchItems + " актов")
+                        .asRuntimeException();
+            }
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            User currentUser = (User) authentication.getPrincipal();
+
+            List<LegalDocumentBatchImporter.ImportItem> items = request.getItemsList().stream()
+                    .map(item -> new LegalDocumentBatchImporter.ImportItem(
+                            item.getTitle(), item.getSourceUrl(), item.getDepartment()))
+                    .collect(Collectors.toList());
+
+            ServerCallStreamObserver<BatchImportLegalResult> serverObserver =
+                    (ServerCallStreamObserver<BatchImportLegalResult>) responseObserver;
+            legalDocumentBatchImporter.importAll(items, currentUser, result -> {
+                BatchImportLegalResult.Builder builder = BatchImportLegalResult.newBuilder()
+                        .setIndex(result.index())
+                        .setSourceUrl(result.sourceUrl())
+                        .setSuccess(result.success());
+                if (result.success()) {
+                    builder.setDocumentId(result.document().getId())
+                            .setMessage("Документ успешно импортирован");
+                } else {
+                    builder.setMessage(result.error() != null ? result.error() : "");
+                }
+                if (!serverObserver.isCancelled()) {
+                    serverObserver.onNext(builder.build());
+                }
+            }, serverObserver::isCancelled);
+
+            if (!serverObserver.isCancelled()) {
+                serverObserver.onCompleted();
+            }
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responseObserver.onError(Status.CANCELLED
+                    .withDescription("Импорт прерван")
+                    .asRuntimeException());
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Ошибка при пакетном импорте НПА: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
     @Override
     public void getLegalDocumentDetails(GetLegalDocumentDetailsRequest request, StreamObserver<LegalDocumentDetailsResponse> responseObserver) {
         try {
@@ -152,10 +220,22 @@ public class LegalDocumentServiceImpl extends LegalDocumentServiceGrpc.LegalDocu
 
     // Вспомогательный метод для конвертации DTO в proto
     private LegalDocumentProto convertToProto(LegalDocumentDto dto) {
-        return LegalDocumentProto.newBuilder()
+        LegalDocumentProto.Builder builder = LegalDocumentProto.newBuilder()
                 .setTitle(dto.getTitle())
                 .setDescription(dto.getDescription() != null ? dto.getDescription() : "")
                 .setSourceUrl(dto.getSourceUrl() != null ? dto.getSourceUrl() : "")
-                .build();
+                .setNumber(dto.getNumber() != null ? dto.getNumber() : "")
+                .setDocumentType(dto.getDocumentType() != null ? dto.getDocumentType() : "");
+        if (dto.getIssueDate() != null) {
+            builder.setIssueDate(com.google.protobuf.Timestamp.newBuilder()
+                    .setSeconds(dto.getIssueDate().atStartOfDay().toEpochSecond(ZoneOffset.UTC))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    // Дата принятия передается как Timestamp начала дня в UTC
+    private static LocalDate toLocalDate(com.google.protobuf.Timestamp timestamp) {
+        return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos()).atZone(ZoneOffset.UTC).toLocalDate();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,84 @@
+package ru.centerinvest.sctd.grpc;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Маршаллер для ответов, уже сериализованных в protobuf.
+ * Байты передаются в транспорт через {@link Drainable} без повторной сериализации и промежуточных копий.
+ */
+final class PreserializedMarshaller implements MethodDescriptor.Marshaller<ByteString> {
+
+    static final PreserializedMarshaller INSTANCE = new PreserializedMarshaller();
+
+    private PreserializedMarshaller() {
+    }
+
+    @Override
+    public InputStream stream(ByteString value) {
+        return new ByteStringInputStream(value);
+    }
+
+    @Override
+    public ByteString parse(InputStream stream) {
+        try {
+            return ByteString.readFrom(stream);
+        } catch (IOException e) {
+            throw Status.INTERNAL
+                    .withDescription("Ошибка чтения сообщения")
+                    .withCause(e)
+                    .asRuntimeException();
+        }
+    }
+
+    private static final class ByteStringInputStream extends InputStream implements KnownLength, Drainable {
+
+        private final ByteString bytes;
+        private InputStream delegate;
+        private boolean drained;
+
+        ByteStringInputStream(ByteString bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int size = bytes.size();
+            bytes.writeTo(target);
+            drained = true;
+            return size;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (drained) {
+                return 0;
+            }
+            return delegate != null ? delegate.available() : bytes.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return drained ? -1 : delegate().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return drained ? -1 : delegate().read(buffer, offset, length);
+        }
+
+        private InputStream delegate() {
+            if (delegate == null) {
+                delegate = bytes.newInput();
+            }
+            return delegate;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.centerinvest.sctd.http;
+
+import java.io.IOException;
+
+/**
+ * Запрос отклонен без обращения к сети: автомат защиты хоста разомкнут
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String host) {
+        super("Источник " + host + " временно недоступен");
+    }
+}
@@ -0,0 +1,126 @@
+package ru.centerinvest.sctd.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тело ответа с ограничением времени чтения.
+ * Таймаут запроса HttpClient ограничивает только ожидание заголовков; тело, которое источник отдает
+ * по байту, иначе занимает поток без ограничения. Сторож закрывает поток, если одно чтение ждет данных
+ * дольше readTimeoutNanos или не уложились в общий срок ответа; закрытие прерывает и заблокированное чтение.
+ */
+final class DeadlineInputStream extends FilterInputStream {
+
+    private final String host;
+    private final long readTimeoutNanos;
+    private final long deadline;
+    private final ScheduledFuture<?> watchdog;
+
+    // Время начала текущего чтения; 0 — чтение не идет
+    private volatile long readStartedAt;
+    private volatile String timeout;
+
+    DeadlineInputStream(InputStream in, String host, long readTimeoutNanos, long deadline,
+                        ScheduledExecutorService scheduler) {
+        super(in);
+        this.host = host;
+        this.readTimeoutNanos = readTimeoutNanos;
+        this.deadline = deadline;
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10),
+                Math.min(TimeUnit.SECONDS.toNanos(1), readTimeoutNanos / 10));
+        this.watchdog = scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Чтение прервано сторожем по таймауту
+     */
+    boolean timedOut() {
+        return timeout != null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        begin();
+        try {
+            return super.read();
+        } catch (IOException e) {
+            throw timedOut() ? timeoutException() : e;
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        begin();
+        try {
+            return super.read(b, off, len);
+        } catch (IOException e) {
+            throw timedOut() ? timeoutException() : e;
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        begin();
+        try {
+            return super.skip(n);
+        } catch (IOException e) {
+            throw timedOut() ? timeoutException() : e;
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchdog.cancel(false);
+        super.close();
+    }
+
+    private void begin() throws HttpTimeoutException {
+        if (timedOut()) {
+            throw timeoutException();
+        }
+        readStartedAt = System.nanoTime();
+    }
+
+    private void end() throws HttpTimeoutException {
+        readStartedAt = 0;
+        // Сторож мог сработать, когда чтение уже вернуло данные
+        if (timedOut()) {
+            throw timeoutException();
+        }
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        long started = readStartedAt;
+        if (now - deadline > 0) {
+            abort("истек срок получения ответа");
+        } else if (started != 0 && now - started > readTimeoutNanos) {
+            abort("нет данных дольше " + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + " мс");
+        }
+    }
+
+    private void abort(String reason) {
+        timeout = reason;
+        watchdog.cancel(false);
+        try {
+            super.close();
+        } catch (IOException e) {
+            // Поток уже закрыт или оборван
+        }
+    }
+
+    private HttpTimeoutException timeoutException() {
+        return new HttpTimeoutException("Чтение ответа " + host + " прервано: " + timeout);
+    }
+}
@@ -0,0 +1,283 @@
+package ru.centerinvest.sctd.http;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * HTTP-клиент для внешних источников (порталы правовой информации).
+ * Один экземпляр {@link HttpClient} на приложение: соединения переиспользуются (keep-alive),
+ * по HTTPS согласуется HTTP/2, если сервер его поддерживает. Размер пула и время жизни простаивающих
+ * соединений задаются системными свойствами jdk.httpclient.connectionPoolSize и jdk.httpclient.keepalive.timeout.
+ * <p>
+ * Таймаут подключения и таймаут чтения ограничивают время до получения заголовков. Тело ответа читается
+ * с тем же таймаутом на каждое чтение и в пределах общего срока ответа ({@link DeadlineInputStream}):
+ * источник, отдающий тело по байту, не занимает поток дольше этого срока.
+ * Сетевые ошибки, 5xx и 429 повторяются с экспоненциальной задержкой со случайной составляющей.
+ * Повторяются только GET-запросы, поэтому повтор безопасен.
+ * Для каждого хоста ведется автомат защиты ({@link CircuitBreaker}): после серии ошибок подряд
+ * запросы к хосту сразу отклоняются с {@link CircuitOpenException}. Таймаут чтения тела тоже считается ошибкой.
+ * Хосты приходят из адресов, присланных клиентами, поэтому число автоматов ограничено, а автомат хоста,
+ * к которому давно не обращались, удаляется.
+ * <p>
+ * Метрики: sctd.http.client.requests (host, outcome), sctd.http.client.retries (host)
+ * и sctd.http.client.circuit.open (host) — число разомкнутых автоматов. Отдельный тег host получают только
+ * хосты из http.client.metric-hosts, остальные учитываются под тегом other.
+ */
+@Component
+public class ExternalHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExternalHttpClient.class);
+
+    private static final String OTHER_HOST = "other";
+
+    private final HttpClient httpClient;
+    private final MeterRegistry meterRegistry;
+    private final Duration readTimeout;
+    private final long responseTimeoutNanos;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private final Set<String> metricHosts;
+    private final Cache<String, CircuitBreaker> circuitBreakers;
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Ответ сервера; тело закрывается клиентом после обработки
+     */
+    public record Response(int statusCode, HttpHeaders headers, InputStream body) {
+    }
+
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    public ExternalHttpClient(MeterRegistry meterRegistry,
+                              @Value("${http.client.connect-timeout:5s}") Duration connectTimeout,
+                              @Value("${http.client.read-timeout:60s}") Duration readTimeout,
+                              @Value("${http.client.response-timeout:10m}") Duration responseTimeout,
+                              @Value("${http.client.max-attempts:3}") int maxAttempts,
+                              @Value("${http.client.backoff.initial:200ms}") Duration initialBackoff,
+                              @Value("${http.client.backoff.max:5s}") Duration maxBackoff,
+                              @Value("${http.client.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                              @Value("${http.client.circuit-breaker.open-duration:30s}") Duration openDuration,
+                              @Value("${http.client.circuit-breaker.max-hosts:1000}") long maxCircuitBreakers,
+                              @Value("${http.client.circuit-breaker.idle-expiry:1h}") Duration circuitBreakerIdleExpiry,
+                              @Value("${http.client.metric-hosts:pravo.gov.ru,api.consultant.ru}") List<String> metricHosts) {
+        this.meterRegistry = meterRegistry;
+        this.readTimeout = readTimeout;
+        this.responseTimeoutNanos = responseTimeout.toNanos();
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.metricHosts = metricHosts.stream()
+                .map(String::trim)
+                .filter(host -> !host.isEmpty())
+                .map(String::toLowerCase)
+                .collect(Collectors.toUnmodifiableSet());
+        // Разомкнутый автомат не удаляется раньше, чем истечет время размыкания
+        this.circuitBreakers = Caffeine.newBuilder()
+                .maximumSize(maxCircuitBreakers)
+                .expireAfterAccess(circuitBreakerIdleExpiry.compareTo(openDuration) > 0
+                        ? circuitBreakerIdleExpiry : openDuration)
+                .build();
+        for (String tag : this.metricHosts) {
+            registerCircuitGauge(tag);
+        }
+        registerCircuitGauge(OTHER_HOST);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-client-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * GET-запрос с повторами; обработчик получает окончательный ответ (в том числе ошибочный
+     * после исчерпания попыток) и читает тело потоком
+     */
+    public <T> T get(String url, Map<String, String> headers, ResponseHandler<T> handler) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректный адрес: " + url, e);
+        }
+        String host = uri.getHost();
+        if (host == null) {
+            throw new IOException("Некорректный адрес: " + url);
+        }
+        host = host.toLowerCase();
+        CircuitBreaker circuitBreaker = circuitBreakerFor(host);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(readTimeout).GET();
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                record(host, "REJECTED", 0);
+                throw new CircuitOpenException(host);
+            }
+            long start = System.nanoTime();
+            long deadline = start + responseTimeoutNanos;
+            HttpResponse<InputStream> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException e) {
+                circuitBreaker.onFailure();
+                record(host, "IO_ERROR", System.nanoTime() - start);
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.debug("Ошибка запроса к {} (попытка {}): {}", host, attempt, e.getMessage());
+                backoff(host, attempt);
+                continue;
+            } catch (InterruptedException e) {
+                // Пробный запрос не завершился: автомат снова ждет, а не остается занятым навсегда
+                circuitBreaker.onFailure();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Запрос к " + host + " прерван");
+            }
+
+            int status = response.statusCode();
+            boolean retryable = status >= 500 || status == 429;
+            record(host, outcome(status), System.nanoTime() - start);
+            if (retryable) {
+                circuitBreaker.onFailure();
+                if (attempt < maxAttempts) {
+                    response.body().close();
+                    backoff(host, attempt);
+                    continue;
+                }
+            }
+            DeadlineInputStream body = new DeadlineInputStream(response.body(), host,
+                    readTimeout.toNanos(), deadline, watchdog);
+            try (body) {
+                T result = handler.handle(new Response(status, response.headers(), body));
+                if (!retryable) {
+                    circuitBreaker.onSuccess();
+                }
+                return result;
+            } catch (IOException | RuntimeException e) {
+                if (body.timedOut()) {
+                    circuitBreaker.onFailure();
+                    record(host, "BODY_TIMEOUT", System.nanoTime() - start);
+                } else if (!retryable) {
+                    // Ошибка обработчика (например, превышен размер) не говорит о сбое источника
+                    circuitBreaker.onSuccess();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Экспоненциальная задержка со случайной составляющей: от половины до полного значения,
+     * чтобы повторы от разных потоков не приходили к источнику одновременно
+     */
+    private void backoff(String host, int attempt) throws InterruptedIOException {
+        Counter.builder("sctd.http.client.retries")
+                .description("Повторы запросов к внешним источникам")
+                .tag("host", metricHost(host))
+                .register(meterRegistry)
+                .increment();
+        long delay = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(delay / 2, delay + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание повтора запроса к " + host + " прервано");
+        }
+    }
+
+    private CircuitBreaker circuitBreakerFor(String host) {
+        return circuitBreakers.get(host, h -> new CircuitBreaker(failureThreshold, openDuration.toNanos()));
+    }
+
+    private void registerCircuitGauge(String tag) {
+        Gauge.builder("sctd.http.client.circuit.open", this, client -> client.openCircuits(tag))
+                .description("Число разомкнутых автоматов защиты хостов")
+                .tag("host", tag)
+                .register(meterRegistry);
+    }
+
+    private long openCircuits(String tag) {
+        return circuitBreakers.asMap().entrySet().stream()
+                .filter(entry -> metricHost(entry.getKey()).equals(tag))
+                .filter(entry -> entry.getValue().state() != CircuitBreaker.State.CLOSED)
+                .count();
+    }
+
+    /**
+     * Значение тега host: хосты вне списка http.client.metric-hosts сводятся в один тег,
+     * чтобы произвольные адреса не увеличивали число метрик
+     */
+    private String metricHost(String host) {
+        return metricHosts.contains(host) ? host : OTHER_HOST;
+    }
+
+    @PreDestroy
+    public void close() {
+        watchdog.shutdownNow();
+    }
+
+    private void record(String host, String outcome, long nanos) {
+        Timer.builder("sctd.http.client.requests")
+                .description("Время до получения ответа внешнего источника")
+                .tag("host", metricHost(host))
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String outcome(int status) {
+        if (status >= 500) {
+            return "SERVER_ERROR";
+        }
+        if (status >= 400) {
+            return "CLIENT_ERROR";
+        }
+        if (status >= 300) {
+            return "REDIRECTION";
+        }
+        return "SUCCESS";
+    }
+}
@@ -51,12 +51,20 @@ public class Document {
     @Column(nullable = false)
     private Long fileSize;
 
+    // SHA-256 содержимого в контентно-адресуемом хранилище
+    @Column(length = 64)
+    private String fileDigest;
+
     @OneToMany(mappedBy = "document", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<StatusHistory> statusHistory = new ArrayList<>();
 
     @OneToMany(mappedBy = "document", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Comment> comments = new ArrayList<>();
 
+    @OneToMany(mappedBy = "document", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("revisionNumber")
+    private List<DocumentRevision> revisions = new ArrayList<>();
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -75,7 +83,9 @@ public class Document {
     }
 
     public enum Status {
-        DRAFT, SUBMITTED, REVIEW_REQUIRED, APPROVED, REJECTED
+        PROCESSING, DRAFT, SUBMITTED, REVIEW_REQUIRED, APPROVED, REJECTED,
+        // Файл не удалось обработать; в отличие от REJECTED это не решение рецензента
+        FAILED
     }
 
     public void addStatusHistory(StatusHistory history) {
@@ -0,0 +1,37 @@
+package ru.centerinvest.sctd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Entity
+@Table(name = "document_counters")
+@IdClass(DocumentCounter.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentCounter {
+
+    @Id
+    private String department;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Document.Status status;
+
+    @Column(name = "doc_count", nullable = false)
+    private long count;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String department;
+        private Document.Status status;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.centerinvest.sctd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "document_revisions")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentRevision {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "document_id", nullable = false)
+    private Document document;
+
+    @Column(nullable = false)
+    private int revisionNumber;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "author_id", nullable = false)
+    private User author;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Storage storage;
+
+    // Полное содержимое (SNAPSHOT) или дельта к предыдущей редакции (DELTA) в контентно-адресуемом хранилище
+    @Column(nullable = false, length = 64)
+    private String blobDigest;
+
+    @Column(nullable = false)
+    private long storedSize;
+
+    // SHA-256 полного содержимого редакции
+    @Column(nullable = false, length = 64)
+    private String contentDigest;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String fileType;
+
+    @Column(nullable = false)
+    private long fileSize;
+
+    @Column(length = 1000)
+    private String comment;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public enum Storage {
+        SNAPSHOT, DELTA
+    }
+}
@@ -0,0 +1,45 @@
+package ru.centerinvest.sctd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "file_blobs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileBlob {
+
+    @Id
+    @Column(length = 64)
+    private String digest;
+
+    // Исходный размер файла
+    @Column(nullable = false)
+    private long size;
+
+    // Размер в хранилище с учетом сжатия
+    private Long storedSize;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Encoding encoding;
+
+    @Column(nullable = false)
+    private long refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime releasedAt;
+
+    public enum Encoding {
+        IDENTITY, DEFLATE
+    }
+}
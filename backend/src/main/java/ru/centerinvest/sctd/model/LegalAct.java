@@ -0,0 +1,38 @@
+package ru.centerinvest.sctd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "legal_acts")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LegalAct {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 1024)
+    private String sourceUrl;
+
+    private String number;
+
+    @Column(nullable = false, length = 2048)
+    private String title;
+
+    private String documentType;
+
+    private LocalDate issueDate;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
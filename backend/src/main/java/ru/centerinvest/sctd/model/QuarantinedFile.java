@@ -0,0 +1,29 @@
+package ru.centerinvest.sctd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "storage_quarantine")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuarantinedFile {
+
+    // Ключ в хранилище с префиксом storage: или абсолютный путь локального файла с префиксом file:
+    @Id
+    @Column(length = 1024)
+    private String location;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private LocalDateTime detectedAt;
+}
@@ -1,11 +1,13 @@
 package ru.centerinvest.sctd.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.centerinvest.sctd.model.Comment;
 import ru.centerinvest.sctd.model.Document;
 import ru.centerinvest.sctd.model.User;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +15,9 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     List<Comment> findByDocument(Document document);
     List<Comment> findByUser(User user);
     long countByUser(User user);
+
+    // Пакетная загрузка комментариев для страницы документов вместе с пользователями
+    @Query("SELECT c FROM Comment c JOIN FETCH c.user " +
+           "WHERE c.document.id IN :documentIds ORDER BY c.createdAt ASC, c.id ASC")
+    List<Comment> findByDocumentIdsWithUser(Collection<Long> documentIds);
 } 
\ No newline at end of file
@@ -0,0 +1,38 @@
+package ru.centerinvest.sctd.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.DocumentCounter;
+
+import java.util.List;
+
+@Repository
+public interface DocumentCounterRepository extends JpaRepository<DocumentCounter, DocumentCounter.Key> {
+    List<DocumentCounter> findByDepartment(String department);
+
+    @Modifying
+    @Query(value = "INSERT INTO document_counters (department, status, doc_count) " +
+                   "VALUES (:department, :status, 0) ON CONFLICT DO NOTHING", nativeQuery = true)
+    void insertIfAbsent(String department, String status);
+
+    @Modifying
+    @Query("UPDATE DocumentCounter c SET c.count = c.count + :delta " +
+           "WHERE c.department = :department AND c.status = :status")
+    int increment(String department, Document.Status status, long delta);
+
+    @Query("SELECT COALESCE(SUM(c.count), 0) FROM DocumentCounter c " +
+           "WHERE c.department = :department AND c.status = :status")
+    long sumByDepartmentAndStatus(String department, Document.Status status);
+
+    @Query("SELECT COALESCE(SUM(c.count), 0) FROM DocumentCounter c WHERE c.status = :status")
+    long sumByStatus(Document.Status status);
+
+    @Query("SELECT COALESCE(SUM(c.count), 0) FROM DocumentCounter c WHERE c.department = :department")
+    long sumByDepartment(String department);
+
+    @Query("SELECT COALESCE(SUM(c.count), 0) FROM DocumentCounter c")
+    long sumAll();
+}
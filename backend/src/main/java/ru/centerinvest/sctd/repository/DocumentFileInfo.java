@@ -0,0 +1,15 @@
+package ru.centerinvest.sctd.repository;
+
+import ru.centerinvest.sctd.model.Document;
+
+/**
+ * Проекция документа с данными о файле
+ */
+public interface DocumentFileInfo {
+    Long getId();
+    String getFilePath();
+    String getFileDigest();
+    String getFileName();
+    String getFileType();
+    Document.Status getStatus();
+}
@@ -1,12 +1,23 @@
 package ru.centerinvest.sctd.repository;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.centerinvest.sctd.model.Document;
 import ru.centerinvest.sctd.model.User;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
@@ -18,4 +29,77 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
            "d.author = :user OR " +
            "d.department = :department AND :userRole = 'DEPARTMENT_HEAD'")
     List<Document> findAvailableDocuments(User user, String department, String userRole);
-} 
\ No newline at end of file
+
+    // Постраничные выборки для ListDocuments: автор подгружается в том же запросе,
+    // общее число документов берется из document_counters, поэтому COUNT(*) не выполняется
+    @EntityGraph(attributePaths = "author")
+    Slice<Document> findByStatusAndDepartment(Document.Status status, String department, Pageable pageable);
+
+    @EntityGraph(attributePaths = "author")
+    Slice<Document> findByStatus(Document.Status status, Pageable pageable);
+
+    @EntityGraph(attributePaths = "author")
+    Slice<Document> findByDepartment(String department, Pageable pageable);
+
+    @EntityGraph(attributePaths = "author")
+    Slice<Document> findAllBy(Pageable pageable);
+
+    // Курсорная пагинация по (createdAt, id): переход к странице без OFFSET
+    @EntityGraph(attributePaths = "author")
+    Window<Document> findByStatusAndDepartmentOrderByCreatedAtDescIdDesc(Document.Status status, String department,
+                                                                        ScrollPosition position, Limit limit);
+
+    @EntityGraph(attributePaths = "author")
+    Window<Document> findByStatusOrderByCreatedAtDescIdDesc(Document.Status status, ScrollPosition position, Limit limit);
+
+    @EntityGraph(attributePaths = "author")
+    Window<Document> findByDepartmentOrderByCreatedAtDescIdDesc(String department, ScrollPosition position, Limit limit);
+
+    @EntityGraph(attributePaths = "author")
+    Window<Document> findAllByOrderByCreatedAtDescIdDesc(ScrollPosition position, Limit limit);
+
+    // Загрузка результатов поиска и пакетная переиндексация
+    @EntityGraph(attributePaths = "author")
+    List<Document> findByIdIn(Collection<Long> ids);
+
+    List<Document> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Догрузка поискового индекса после перезапуска: документы, измененные после метки фиксации индекса
+    List<Document> findByUpdatedAtGreaterThanEqualAndIdGreaterThanOrderByIdAsc(LocalDateTime updatedAt, Long id,
+                                                                                Limit limit);
+
+    // Выборки в виде SUMMARY: читаются только нужные колонки, без коллекций
+    Optional<DocumentSummary> findSummaryById(Long id);
+
+    List<DocumentSummary> findSummariesByIdIn(Collection<Long> ids);
+
+    Slice<DocumentSummary> findSummariesByStatusAndDepartment(Document.Status status, String department, Pageable pageable);
+    Slice<DocumentSummary> findSummariesByStatus(Document.Status status, Pageable pageable);
+    Slice<DocumentSummary> findSummariesByDepartment(String department, Pageable pageable);
+    Slice<DocumentSummary> findSummariesBy(Pageable pageable);
+
+    Window<DocumentSummary> findSummariesByStatusAndDepartmentOrderByCreatedAtDescIdDesc(
+            Document.Status status, String department, ScrollPosition position, Limit limit);
+    Window<DocumentSummary> findSummariesByStatusOrderByCreatedAtDescIdDesc(
+            Document.Status status, ScrollPosition position, Limit limit);
+    Window<DocumentSummary> findSummariesByDepartmentOrderByCreatedAtDescIdDesc(
+            String department, ScrollPosition position, Limit limit);
+    Window<DocumentSummary> findSummariesByOrderByCreatedAtDescIdDesc(ScrollPosition position, Limit limit);
+
+    // Версия документа одним чтением по первичному ключу, без загрузки сущности
+    @Query("SELECT d.updatedAt FROM Document d WHERE d.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(Long id);
+
+    // Блокировка документа перед любым изменением: сохранение сущности пишет все колонки,
+    // поэтому изменение по копии, прочитанной без блокировки, затирает параллельную смену файла или статуса
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Document d WHERE d.id = :id")
+    Optional<Document> findByIdForUpdate(Long id);
+
+    // Расположение файла документа для скачивания
+    Optional<DocumentFileInfo> findFileInfoById(Long id);
+
+    // Пакетная проверка ссылок на локальные файлы при сверке хранилища
+    @Query("SELECT d.filePath FROM Document d WHERE d.filePath IN :paths")
+    List<String> findExistingFilePaths(Collection<String> paths);
+}
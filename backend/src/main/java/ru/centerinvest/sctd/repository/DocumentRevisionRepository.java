@@ -0,0 +1,31 @@
+package ru.centerinvest.sctd.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.centerinvest.sctd.model.DocumentRevision;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DocumentRevisionRepository extends JpaRepository<DocumentRevision, Long> {
+
+    Optional<DocumentRevision> findByDocumentIdAndRevisionNumber(Long documentId, int revisionNumber);
+
+    Optional<DocumentRevision> findFirstByDocumentIdOrderByRevisionNumberDesc(Long documentId);
+
+    // Цепочка для восстановления: последний снимок не позже нужной редакции и дельты после него
+    @Query("SELECT r FROM DocumentRevision r WHERE r.document.id = :documentId AND r.revisionNumber <= :revisionNumber " +
+           "AND r.revisionNumber >= (SELECT MAX(s.revisionNumber) FROM DocumentRevision s " +
+           "WHERE s.document.id = :documentId AND s.revisionNumber <= :revisionNumber " +
+           "AND s.storage = ru.centerinvest.sctd.model.DocumentRevision.Storage.SNAPSHOT) " +
+           "ORDER BY r.revisionNumber")
+    List<DocumentRevision> findReconstructionChain(Long documentId, int revisionNumber);
+
+    // Пакетная загрузка редакций для страницы документов вместе с авторами
+    @Query("SELECT r FROM DocumentRevision r JOIN FETCH r.author " +
+           "WHERE r.document.id IN :documentIds ORDER BY r.revisionNumber")
+    List<DocumentRevision> findByDocumentIdsWithAuthor(Collection<Long> documentIds);
+}
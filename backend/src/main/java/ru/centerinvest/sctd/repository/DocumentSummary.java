@@ -0,0 +1,32 @@
+package ru.centerinvest.sctd.repository;
+
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция документа для списков: только колонки таблицы documents и автор,
+ * без истории статусов и комментариев
+ */
+public interface DocumentSummary {
+    Long getId();
+    String getTitle();
+    String getDescription();
+    String getDepartment();
+    Document.Status getStatus();
+    String getFileName();
+    String getFileType();
+    Long getFileSize();
+    LocalDateTime getCreatedAt();
+    LocalDateTime getUpdatedAt();
+    AuthorSummary getAuthor();
+
+    interface AuthorSummary {
+        Long getId();
+        String getName();
+        String getEmail();
+        String getDepartment();
+        User.Role getRole();
+    }
+}
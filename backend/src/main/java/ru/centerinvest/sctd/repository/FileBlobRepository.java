@@ -0,0 +1,50 @@
+package ru.centerinvest.sctd.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.centerinvest.sctd.model.FileBlob;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO file_blobs (digest, size, stored_size, encoding, ref_count, created_at) " +
+                   "VALUES (:digest, :size, :size, 'IDENTITY', 0, CURRENT_TIMESTAMP) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(String digest, long size);
+
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.encoding = :encoding, b.storedSize = :storedSize WHERE b.digest = :digest")
+    int updateEncoding(String digest, FileBlob.Encoding encoding, long storedSize);
+
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount + 1, b.releasedAt = NULL WHERE b.digest = :digest")
+    int incrementRef(String digest);
+
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1, " +
+           "b.releasedAt = CASE WHEN b.refCount = 1 THEN :now ELSE b.releasedAt END " +
+           "WHERE b.digest = :digest AND b.refCount > 0")
+    int decrementRef(String digest, LocalDateTime now);
+
+    @Query("SELECT b.digest FROM FileBlob b WHERE b.refCount = 0 AND b.releasedAt < :before ORDER BY b.releasedAt")
+    List<String> findUnreferencedDigests(LocalDateTime before, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM FileBlob b WHERE b.digest = :digest AND b.refCount = 0 AND b.releasedAt < :before")
+    int deleteIfUnreferenced(String digest, LocalDateTime before);
+
+    // Пакетная проверка ключей хранилища при сверке
+    @Query("SELECT b.digest FROM FileBlob b WHERE b.digest IN :digests")
+    List<String> findExistingDigests(Collection<String> digests);
+
+    @Modifying
+    @Query("DELETE FROM FileBlob b WHERE b.digest = :digest AND b.refCount = 0")
+    int deleteUnreferenced(String digest);
+}
@@ -0,0 +1,19 @@
+package ru.centerinvest.sctd.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.centerinvest.sctd.model.LegalAct;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface LegalActRepository extends JpaRepository<LegalAct, Long> {
+
+    // Порция записей, измененных после (updatedAt, id), для инкрементальной загрузки каталога
+    @Query("SELECT a FROM LegalAct a WHERE a.updatedAt > :updatedAt OR (a.updatedAt = :updatedAt AND a.id > :id) " +
+           "ORDER BY a.updatedAt, a.id")
+    List<LegalAct> findChangedAfter(LocalDateTime updatedAt, Long id, Pageable pageable);
+}
@@ -0,0 +1,31 @@
+package ru.centerinvest.sctd.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.centerinvest.sctd.model.QuarantinedFile;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface QuarantinedFileRepository extends JpaRepository<QuarantinedFile, String> {
+
+    List<QuarantinedFile> findByLocationIn(Collection<String> locations);
+
+    @Modifying
+    @Query(value = "INSERT INTO storage_quarantine (location, size, detected_at) " +
+                   "VALUES (:location, :size, :detectedAt) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(String location, long size, LocalDateTime detectedAt);
+
+    @Modifying
+    @Query("DELETE FROM QuarantinedFile q WHERE q.location IN :locations")
+    int deleteByLocationIn(Collection<String> locations);
+
+    // Записи о файлах, которые исчезли из хранилища без участия сверки
+    @Modifying
+    @Query("DELETE FROM QuarantinedFile q WHERE q.detectedAt < :before")
+    int deleteDetectedBefore(LocalDateTime before);
+}
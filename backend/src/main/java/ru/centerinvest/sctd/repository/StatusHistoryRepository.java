@@ -1,11 +1,13 @@
 package ru.centerinvest.sctd.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.centerinvest.sctd.model.Document;
 import ru.centerinvest.sctd.model.StatusHistory;
 import ru.centerinvest.sctd.model.User;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +15,9 @@ public interface StatusHistoryRepository extends JpaRepository<StatusHistory, Lo
     List<StatusHistory> findByDocumentOrderByCreatedAtDesc(Document document);
     List<StatusHistory> findByUser(User user);
     long countByUser(User user);
+
+    // Пакетная загрузка истории для страницы документов вместе с пользователями
+    @Query("SELECT h FROM StatusHistory h JOIN FETCH h.user " +
+           "WHERE h.document.id IN :documentIds ORDER BY h.createdAt DESC, h.id DESC")
+    List<StatusHistory> findByDocumentIdsWithUser(Collection<Long> documentIds);
 } 
\ No newline at end of file
@@ -0,0 +1,267 @@
+package ru.centerinvest.sctd.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Бинарная дельта в стиле rsync.
+ * Базовый файл делится на блоки, блоки индексируются слабой скользящей контрольной суммой;
+ * новый файл просматривается окном размера блока, совпадение суммы проверяется сравнением байт.
+ * Найденное совпадение продлевается за границу блока, поэтому подряд идущие блоки дают одну операцию.
+ * <p>
+ * Формат: заголовок (магия, размер базы, размер результата, размер блока), затем операции
+ * COPY (смещение в базе, длина) и INSERT (длина, байты), в конце END.
+ */
+final class BinaryDelta {
+
+    private static final int MAGIC = 0x53444C54;
+
+    private static final byte OP_END = 0;
+    private static final byte OP_COPY = 1;
+    private static final byte OP_INSERT = 2;
+
+    private static final int MIN_BLOCK_SIZE = 512;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BinaryDelta() {
+    }
+
+    /**
+     * Построение дельты target относительно base
+     */
+    static void encode(ByteBuffer base, ByteBuffer target, OutputStream out) throws IOException {
+        int baseSize = base.limit();
+        int targetSize = target.limit();
+        int blockSize = blockSize(baseSize);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeLong(baseSize);
+        data.writeLong(targetSize);
+        data.writeInt(blockSize);
+
+        Emitter emitter = new Emitter(data, target);
+        int blocks = baseSize / blockSize;
+        if (blocks == 0 || targetSize < blockSize) {
+            emitter.insert(0, targetSize);
+            emitter.finish();
+            return;
+        }
+
+        // Хэш-таблица блоков базы с цепочками: head[слот] — первый блок, next[блок] — следующий
+        int mask = Integer.highestOneBit(Math.max(16, blocks * 2) - 1) * 2 - 1;
+        int[] head = new int[mask + 1];
+        Arrays.fill(head, -1);
+        int[] next = new int[blocks];
+        int[] weak = new int[blocks];
+        for (int block = 0; block < blocks; block++) {
+            int sum = checksum(base, block * blockSize, blockSize);
+            int slot = slot(sum, mask);
+            weak[block] = sum;
+            next[block] = head[slot];
+            head[slot] = block;
+        }
+
+        int position = 0;
+        int literalStart = 0;
+        int a = 0;
+        int b = 0;
+        boolean windowValid = false;
+        while (position + blockSize <= targetSize) {
+            if (!windowValid) {
+                a = 0;
+                b = 0;
+                for (int i = 0; i < blockSize; i++) {
+                    int x = target.get(position + i) & 0xff;
+                    a += x;
+                    b += (blockSize - i) * x;
+                }
+                windowValid = true;
+            }
+            int sum = (a & 0xffff) | (b << 16);
+
+            int match = -1;
+            for (int block = head[slot(sum, mask)]; block >= 0; block = next[block]) {
+                if (weak[block] == sum && base.slice(block * blockSize, blockSize)
+                        .mismatch(target.slice(position, blockSize)) < 0) {
+                    match = block;
+                    break;
+                }
+            }
+
+            if (match >= 0) {
+                int baseStart = match * blockSize;
+                // Совпадение продлевается, пока байты базы и нового файла совпадают
+                int extension = Math.min(targetSize - position - blockSize, baseSize - baseStart - blockSize);
+                int mismatch = extension > 0
+                        ? base.slice(baseStart + blockSize, extension).mismatch(target.slice(position + blockSize, extension))
+                        : -1;
+                int length = blockSize + (mismatch < 0 ? Math.max(extension, 0) : mismatch);
+
+                emitter.insert(literalStart, position - literalStart);
+                emitter.copy(baseStart, length);
+                position += length;
+                literalStart = position;
+                windowValid = false;
+            } else {
+                // Окно сдвигается на байт: сумма пересчитывается за O(1)
+                if (position + blockSize < targetSize) {
+                    int removed = target.get(position) & 0xff;
+                    int added = target.get(position + blockSize) & 0xff;
+                    a = a - removed + added;
+                    b = b - blockSize * removed + a;
+                }
+                position++;
+            }
+        }
+        emitter.insert(literalStart, targetSize - literalStart);
+        emitter.finish();
+    }
+
+    /**
+     * Восстановление файла по базе и дельте; COPY переносится из базы без копирования в кучу
+     */
+    static long apply(FileChannel base, InputStream delta, FileChannel out) throws IOException {
+        DataInputStream data = new DataInputStream(delta);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Неверный формат дельты");
+        }
+        long baseSize = data.readLong();
+        long targetSize = data.readLong();
+        data.readInt();
+        if (baseSize != base.size()) {
+            throw new IOException("Дельта построена для базы другого размера");
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        while (true) {
+            byte op = data.readByte();
+            if (op == OP_END) {
+                break;
+            } else if (op == OP_COPY) {
+                long offset = data.readLong();
+                long length = data.readInt();
+                if (offset < 0 || offset + length > baseSize) {
+                    throw new IOException("Операция дельты выходит за границы базы");
+                }
+                long copied = 0;
+                while (copied < length) {
+                    long transferred = base.transferTo(offset + copied, length - copied, out);
+                    if (transferred <= 0) {
+                        throw new EOFException("Базовый файл короче ожидаемого");
+                    }
+                    copied += transferred;
+                }
+                written += length;
+            } else if (op == OP_INSERT) {
+                int remaining = data.readInt();
+                while (remaining > 0) {
+                    int read = Math.min(remaining, buffer.length);
+                    data.readFully(buffer, 0, read);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        out.write(chunk);
+                    }
+                    remaining -= read;
+                    written += read;
+                }
+            } else {
+                throw new IOException("Неизвестная операция дельты: " + op);
+            }
+        }
+        if (written != targetSize) {
+            throw new IOException("Размер восстановленного файла не совпадает с ожидаемым");
+        }
+        return written;
+    }
+
+    /**
+     * Размер блока порядка корня из размера файла, как в rsync
+     */
+    private static int blockSize(int baseSize) {
+        int size = (int) Math.sqrt(baseSize);
+        return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int x = buffer.get(offset + i) & 0xff;
+            a += x;
+            b += (length - i) * x;
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    private static int slot(int sum, int mask) {
+        return (sum ^ (sum >>> 15)) * 0x9E3779B1 >>> 7 & mask;
+    }
+
+    /**
+     * Запись операций; соседние COPY по непрерывному участку базы склеиваются
+     */
+    private static final class Emitter {
+
+        private final DataOutputStream out;
+        private final ByteBuffer target;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long copyOffset = -1;
+        private int copyLength;
+
+        Emitter(DataOutputStream out, ByteBuffer target) {
+            this.out = out;
+            this.target = target;
+        }
+
+        void copy(long offset, int length) throws IOException {
+            if (copyOffset >= 0 && copyOffset + copyLength == offset && (long) copyLength + length <= Integer.MAX_VALUE) {
+                copyLength += length;
+                return;
+            }
+            flushCopy();
+            copyOffset = offset;
+            copyLength = length;
+        }
+
+        void insert(int offset, int length) throws IOException {
+            if (length <= 0) {
+                return;
+            }
+            flushCopy();
+            out.writeByte(OP_INSERT);
+            out.writeInt(length);
+            int written = 0;
+            while (written < length) {
+                int chunk = Math.min(buffer.length, length - written);
+                target.get(offset + written, buffer, 0, chunk);
+                out.write(buffer, 0, chunk);
+                written += chunk;
+            }
+        }
+
+        void finish() throws IOException {
+            flushCopy();
+            out.writeByte(OP_END);
+            out.flush();
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyOffset >= 0) {
+                out.writeByte(OP_COPY);
+                out.writeLong(copyOffset);
+                out.writeInt(copyLength);
+                copyOffset = -1;
+            }
+        }
+    }
+}
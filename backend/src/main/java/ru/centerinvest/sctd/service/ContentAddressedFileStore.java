@@ -0,0 +1,373 @@
+package ru.centerinvest.sctd.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.centerinvest.sctd.model.FileBlob;
+import ru.centerinvest.sctd.repository.FileBlobRepository;
+import ru.centerinvest.sctd.storage.BoundedInputStream;
+import ru.centerinvest.sctd.storage.FileStorage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Контентно-адресуемое хранилище файлов документов.
+ * Файл хранится один раз под своим SHA-256 в {@link FileStorage}, документы ссылаются на дайджест,
+ * число ссылок ведется в таблице file_blobs. Блобы без ссылок удаляются по расписанию после периода ожидания.
+ * Текстовые форматы при записи сжимаются deflate и прозрачно распаковываются при чтении.
+ * <p>
+ * Ссылка захватывается в транзакции, сохраняющей документ: строка блоба блокируется до фиксации,
+ * поэтому сборщик мусора не может удалить файл, на который в этот момент ставится ссылка.
+ */
+@Service
+public class ContentAddressedFileStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentAddressedFileStore.class);
+
+    private static final int GC_BATCH_SIZE = 100;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Сжатый файл хранится, только если он меньше исходного хотя бы на 10%
+    private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+    private static final Set<String> COMPRESSIBLE_TYPES = Set.of(
+            "application/xml",
+            "application/json",
+            "application/rtf",
+            "application/msword",
+            "application/vnd.ms-excel",
+            "application/x-yaml",
+            "application/sql");
+
+    private final FileBlobRepository fileBlobRepository;
+    private final FileStorage fileStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final Path tempDir;
+    private final Duration gcGracePeriod;
+    private final boolean compressionEnabled;
+    private final int compressionLevel;
+
+    public ContentAddressedFileStore(FileBlobRepository fileBlobRepository,
+                                     FileStorage fileStorage,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${file.upload-dir:./uploads}") String uploadDir,
+                                     @Value("${file.blob-gc.grace-period:1h}") Duration gcGracePeriod,
+                                     @Value("${file.compression.enabled:true}") boolean compressionEnabled,
+                                     @Value("${file.compression.level:6}") int compressionLevel) throws IOException {
+        this.fileBlobRepository = fileBlobRepository;
+        this.fileStorage = fileStorage;
+        this.transactionTemplate = transactionTemplate;
+        this.tempDir = Paths.get(uploadDir, ".tmp").toAbsolutePath().normalize();
+        this.gcGracePeriod = gcGracePeriod;
+        this.compressionEnabled = compressionEnabled;
+        this.compressionLevel = compressionLevel;
+        Files.createDirectories(tempDir);
+    }
+
+    /**
+     * Сохраненный блоб: дайджест (он же ключ в хранилище) и размер
+     */
+    public record StoredBlob(String digest, long size) {
+    }
+
+    /**
+     * Локальный каталог для временных файлов загрузок
+     */
+    public Path getTempDir() {
+        return tempDir;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Сохранение содержимого из памяти: сначала хэш, запись только если такого блоба еще нет
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public StoredBlob store(byte[] content, String fileType) {
+        MessageDigest messageDigest = newDigest();
+        messageDigest.update(content);
+        String digest = toHex(messageDigest);
+
+        try {
+            if (acquire(digest, content.length)) {
+                byte[] stored = content;
+                FileBlob.Encoding encoding = FileBlob.Encoding.IDENTITY;
+                if (isCompressible(fileType)) {
+                    byte[] compressed = deflate(content);
+                    if (compressed.length < content.length * MAX_COMPRESSION_RATIO) {
+                        stored = compressed;
+                        encoding = FileBlob.Encoding.DEFLATE;
+                    }
+                }
+                fileStorage.write(digest, new ByteArrayInputStream(stored));
+                fileBlobRepository.updateEncoding(digest, encoding, stored.length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при сохранении файла", e);
+        }
+        return new StoredBlob(digest, content.length);
+    }
+
+    /**
+     * Сохранение потока: хэш считается при копировании во временный файл за один проход
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public StoredBlob store(InputStream content, String fileType) {
+        try {
+            Path tempFile = Files.createTempFile(tempDir, "blob-", ".part");
+            MessageDigest messageDigest = newDigest();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), messageDigest)) {
+                size = content.transferTo(out);
+            } catch (IOException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            return store(tempFile, toHex(messageDigest), size, fileType);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при сохранении файла", e);
+        }
+    }
+
+    /**
+     * Сохранение уже записанного временного файла с известным дайджестом.
+     * Если такой блоб уже есть, временный файл удаляется без повторной записи.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public StoredBlob store(Path tempFile, String digest, long size, String fileType) {
+        try {
+            if (!acquire(digest, size)) {
+                Files.deleteIfExists(tempFile);
+                return new StoredBlob(digest, size);
+            }
+            Path stored = tempFile;
+            FileBlob.Encoding encoding = FileBlob.Encoding.IDENTITY;
+            if (isCompressible(fileType)) {
+                Path compressed = deflate(tempFile);
+                if (Files.size(compressed) < size * MAX_COMPRESSION_RATIO) {
+                    Files.deleteIfExists(tempFile);
+                    stored = compressed;
+                    encoding = FileBlob.Encoding.DEFLATE;
+                } else {
+                    Files.deleteIfExists(compressed);
+                }
+            }
+            long storedSize = Files.size(stored);
+            fileStorage.write(digest, stored);
+            fileBlobRepository.updateEncoding(digest, encoding, storedSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при сохранении файла", e);
+        }
+        return new StoredBlob(digest, size);
+    }
+
+    /**
+     * Дополнительная ссылка на уже сохраненный блоб (например, снимок редакции того же файла)
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void retain(String digest) {
+        if (fileBlobRepository.incrementRef(digest) == 0) {
+            throw new IllegalStateException("Блоб не найден: " + digest);
+        }
+    }
+
+    /**
+     * Освобождение ссылки на блоб; файл удаляется сборщиком мусора после периода ожидания
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(String digest) {
+        if (digest != null) {
+            fileBlobRepository.decrementRef(digest, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Путь к файлу документа на локальном диске, если файл можно читать напрямую.
+     * Для сжатых файлов путь не возвращается — их нужно читать через {@link #open}.
+     * Документы, созданные до появления хранилища, ссылаются на файл напрямую (digest == null).
+     */
+    public Optional<Path> localPath(String digest, String filePath) {
+        if (digest == null) {
+            return Optional.ofNullable(filePath).map(Paths::get);
+        }
+        if (encodingOf(digest) != FileBlob.Encoding.IDENTITY) {
+            return Optional.empty();
+        }
+        return fileStorage.localPath(digest);
+    }
+
+    /**
+     * Чтение диапазона исходного содержимого файла; length < 0 означает до конца файла.
+     * Сжатые файлы распаковываются потоком.
+     */
+    public InputStream open(String digest, String filePath, long offset, long length) throws IOException {
+        if (digest == null) {
+            FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            return length >= 0 ? new BoundedInputStream(in, length) : in;
+        }
+        if (encodingOf(digest) == FileBlob.Encoding.IDENTITY) {
+            return fileStorage.read(digest, offset, length);
+        }
+        // Произвольный доступ в deflate-потоке невозможен: распаковываем с начала и пропускаем смещение
+        InputStream in = new InflaterInputStream(new BufferedInputStream(fileStorage.read(digest), BUFFER_SIZE));
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return length >= 0 ? new BoundedInputStream(in, length) : in;
+    }
+
+    /**
+     * Исходный (несжатый) размер файла документа
+     */
+    public long size(String digest, String filePath) throws IOException {
+        if (digest == null) {
+            return Files.size(Paths.get(filePath));
+        }
+        return fileBlobRepository.findById(digest)
+                .map(FileBlob::getSize)
+                .orElseThrow(() -> new NoSuchFileException(digest));
+    }
+
+    @Scheduled(fixedDelayString = "${file.blob-gc.interval:PT1H}", initialDelayString = "${file.blob-gc.interval:PT1H}")
+    public void collectGarbage() {
+        LocalDateTime before = LocalDateTime.now().minus(gcGracePeriod);
+        long removed = 0;
+        List<String> digests;
+        long batchRemoved;
+        do {
+            batchRemoved = 0;
+            digests = fileBlobRepository.findUnreferencedDigests(before, Limit.of(GC_BATCH_SIZE));
+            for (String digest : digests) {
+                try {
+                    // Строка и файл удаляются в одной транзакции: параллельная вставка той же строки ждет ее завершения
+                    Boolean deleted = transactionTemplate.execute(tx -> {
+                        if (fileBlobRepository.deleteIfUnreferenced(digest, before) == 0) {
+                            return false;
+                        }
+                        try {
+                            fileStorage.delete(digest);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return true;
+                    });
+                    if (Boolean.TRUE.equals(deleted)) {
+                        batchRemoved++;
+                    }
+                } catch (Exception e) {
+                    logger.warn("Не удалось удалить блоб {}: {}", digest, e.getMessage());
+                }
+            }
+            removed += batchRemoved;
+            // Пакет без единого удаления означает ошибки ввода-вывода: повторим в следующий запуск
+        } while (digests.size() == GC_BATCH_SIZE && batchRemoved > 0);
+        if (removed > 0) {
+            logger.info("Удалено неиспользуемых файлов: {}", removed);
+        }
+    }
+
+    /**
+     * Захват ссылки на блоб; true, если строка блоба создана этим вызовом и файл нужно записать.
+     * Существующей строке соответствует уже записанный файл, даже если на диске лежит его устаревшая копия.
+     */
+    private boolean acquire(String digest, long size) {
+        boolean created = fileBlobRepository.insertIfAbsent(digest, size) > 0;
+        fileBlobRepository.incrementRef(digest);
+        return created;
+    }
+
+    private FileBlob.Encoding encodingOf(String digest) {
+        return fileBlobRepository.findById(digest)
+                .map(FileBlob::getEncoding)
+                .orElse(FileBlob.Encoding.IDENTITY);
+    }
+
+    /**
+     * Сжимаются текстовые форматы; контейнеры, уже сжатые внутри (PDF, DOCX/XLSX, архивы),
+     * изображения и медиа хранятся как есть
+     */
+    private boolean isCompressible(String fileType) {
+        if (!compressionEnabled || fileType == null) {
+            return false;
+        }
+        String type = fileType.toLowerCase();
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        return type.startsWith("text/") || COMPRESSIBLE_TYPES.contains(type)
+                || type.endsWith("+xml") || type.endsWith("+json");
+    }
+
+    private byte[] deflate(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater, BUFFER_SIZE)) {
+            deflaterOut.write(content);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private Path deflate(Path source) throws IOException {
+        Path compressed = Files.createTempFile(tempDir, "deflate-", ".part");
+        Deflater deflater = new Deflater(compressionLevel);
+        try (InputStream in = Files.newInputStream(source);
+             DeflaterOutputStream out = new DeflaterOutputStream(Files.newOutputStream(compressed), deflater, BUFFER_SIZE)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(compressed);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        return compressed;
+    }
+}
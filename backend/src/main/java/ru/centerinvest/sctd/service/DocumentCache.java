@@ -0,0 +1,59 @@
+package ru.centerinvest.sctd.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.centerinvest.sctd.grpc.DocumentResponse;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Кэш собранных документов для GetDocument.
+ * Ограничен по размеру и времени жизни; вытеснение W-TinyLFU (Caffeine).
+ * Метрики попаданий, промахов и вытеснений публикуются как cache.* с тегом cache=documents.
+ */
+@Service
+public class DocumentCache {
+
+    private final Cache<Long, DocumentResponse> cache;
+
+    public DocumentCache(MeterRegistry meterRegistry,
+                         @Value("${cache.documents.max-size:10000}") long maxSize,
+                         @Value("${cache.documents.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "documents");
+    }
+
+    /**
+     * Документ из кэша; при промахе собирается загрузчиком (один раз для конкурентных запросов)
+     */
+    public DocumentResponse get(Long documentId, Function<Long, DocumentResponse> loader) {
+        return cache.get(documentId, loader);
+    }
+
+    /**
+     * Сброс документа после изменения. Внутри транзакции сброс повторяется после фиксации,
+     * чтобы параллельное чтение не вернуло в кэш незафиксированное состояние.
+     */
+    public void invalidate(Long documentId) {
+        cache.invalidate(documentId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(documentId);
+                }
+            });
+        }
+    }
+}
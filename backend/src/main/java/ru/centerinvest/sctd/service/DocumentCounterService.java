@@ -0,0 +1,70 @@
+package ru.centerinvest.sctd.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.DocumentCounter;
+import ru.centerinvest.sctd.repository.DocumentCounterRepository;
+
+import java.util.List;
+
+/**
+ * Материализованные счетчики документов по (отдел, статус).
+ * Изменения выполняются только внутри транзакции, которая сохраняет сам документ.
+ */
+@Service
+@RequiredArgsConstructor
+public class DocumentCounterService {
+
+    private final DocumentCounterRepository documentCounterRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void documentCreated(String department, Document.Status status) {
+        adjust(department, status, 1);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanged(String department, Document.Status oldStatus, Document.Status newStatus) {
+        if (oldStatus == newStatus) {
+            return;
+        }
+        // Строки блокируются в порядке статусов: встречные переходы A→B и B→A в одном отделе
+        // иначе захватывают их в разном порядке и взаимно блокируются
+        if (oldStatus.ordinal() < newStatus.ordinal()) {
+            adjust(department, oldStatus, -1);
+            adjust(department, newStatus, 1);
+        } else {
+            adjust(department, newStatus, 1);
+            adjust(department, oldStatus, -1);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long count(Document.Status status, String department) {
+        if (status != null && department != null) {
+            return documentCounterRepository.sumByDepartmentAndStatus(department, status);
+        } else if (status != null) {
+            return documentCounterRepository.sumByStatus(status);
+        } else if (department != null) {
+            return documentCounterRepository.sumByDepartment(department);
+        }
+        return documentCounterRepository.sumAll();
+    }
+
+    @Transactional(readOnly = true)
+    public List<DocumentCounter> getCounters(String department) {
+        return department != null
+                ? documentCounterRepository.findByDepartment(department)
+                : documentCounterRepository.findAll();
+    }
+
+    private void adjust(String department, Document.Status status, long delta) {
+        // Строка счетчика создается при первом документе в паре (отдел, статус)
+        if (documentCounterRepository.increment(department, status, delta) == 0) {
+            documentCounterRepository.insertIfAbsent(department, status.name());
+            documentCounterRepository.increment(department, status, delta);
+        }
+    }
+}
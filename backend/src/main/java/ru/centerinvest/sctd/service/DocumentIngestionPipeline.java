@@ -0,0 +1,416 @@
+package ru.centerinvest.sctd.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.StatusHistory;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.repository.StatusHistoryRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронная обработка загруженных документов.
+ * Документ сохраняется в статусе PROCESSING, после чего проходит стадии:
+ * хэширование и перенос файла в хранилище, извлечение текста, построение предпросмотра.
+ * Каждая стадия выполняется в своем ограниченном пуле; при заполнении очереди следующей стадии
+ * предыдущая ждет, а прием новых документов ограничен числом документов в обработке.
+ * По завершении документ переходит в DRAFT, при ошибке обработки — в FAILED.
+ * <p>
+ * Метрики: sctd.ingestion.queue.size и sctd.ingestion.stage.duration с тегом stage.
+ */
+@Service
+public class DocumentIngestionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIngestionPipeline.class);
+
+    private static final int STATUS_CHANGE_ATTEMPTS = 3;
+    private static final long STATUS_CHANGE_BACKOFF_MILLIS = 200;
+
+    private final DocumentRepository documentRepository;
+    private final StatusHistoryRepository statusHistoryRepository;
+    private final ContentAddressedFileStore contentAddressedFileStore;
+    private final DocumentTextExtractor textExtractor;
+    private final DocumentSearchService documentSearchService;
+    private final DocumentCounterService documentCounterService;
+    private final DocumentCache documentCache;
+    private final DocumentPreviewService documentPreviewService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Stage hashStage;
+    private final Stage extractStage;
+    private final Stage thumbnailStage;
+
+    /**
+     * Состояние документа между стадиями
+     */
+    private static final class IngestionJob {
+        private final Long documentId;
+        private String digest;
+        private String text;
+
+        private IngestionJob(Long documentId, String digest) {
+            this.documentId = documentId;
+            this.digest = digest;
+        }
+    }
+
+    public DocumentIngestionPipeline(DocumentRepository documentRepository,
+                                     StatusHistoryRepository statusHistoryRepository,
+                                     ContentAddressedFileStore contentAddressedFileStore,
+                                     DocumentTextExtractor textExtractor,
+                                     DocumentSearchService documentSearchService,
+                                     DocumentCounterService documentCounterService,
+                                     DocumentCache documentCache,
+                                     DocumentPreviewService documentPreviewService,
+                                     TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${ingestion.max-in-flight:100}") int maxInFlight,
+                                     @Value("${ingestion.queue-capacity:100}") int queueCapacity,
+                                     @Value("${ingestion.hash.threads:2}") int hashThreads,
+                                     @Value("${ingestion.extract.threads:2}") int extractThreads,
+                                     @Value("${ingestion.thumbnail.threads:1}") int thumbnailThreads) {
+        this.documentRepository = documentRepository;
+        this.statusHistoryRepository = statusHistoryRepository;
+        this.contentAddressedFileStore = contentAddressedFileStore;
+        this.textExtractor = textExtractor;
+        this.documentSearchService = documentSearchService;
+        this.documentCounterService = documentCounterService;
+        this.documentCache = documentCache;
+        this.documentPreviewService = documentPreviewService;
+        this.transactionTemplate = transactionTemplate;
+        this.maxInFlight = maxInFlight;
+
+        // Очередь первой стадии вмещает все принятые документы, поэтому прием никогда не блокирует вызывающего
+        this.thumbnailStage = new Stage("thumbnail", thumbnailThreads, queueCapacity, meterRegistry,
+                this::buildThumbnail, null);
+        this.extractStage = new Stage("extract", extractThreads, queueCapacity, meterRegistry,
+                this::extractText, thumbnailStage);
+        this.hashStage = new Stage("hash", hashThreads, Math.max(queueCapacity, maxInFlight), meterRegistry,
+                this::storeFile, extractStage);
+    }
+
+    /**
+     * Резервирование места в конвейере до сохранения документа.
+     * false означает перегрузку: новый документ следует отклонить.
+     */
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Возврат зарезервированного места, если документ так и не был передан в обработку
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Передача сохраненного документа в обработку по ранее зарезервированному месту.
+     * Если дайджест уже посчитан при приеме файла, повторное хэширование не выполняется.
+     */
+    public void submit(Long documentId, String digest) {
+        IngestionJob job = new IngestionJob(documentId, digest);
+        try {
+            hashStage.submit(job);
+        } catch (RejectedExecutionException e) {
+            // Конвейер остановлен: документ остается в PROCESSING и будет обработан после перезапуска
+            logger.warn("Документ {} не передан в обработку: {}", documentId, e.getMessage());
+            finish(job);
+        }
+    }
+
+    /**
+     * Документы, обработка которых прервалась остановкой приложения, обрабатываются заново.
+     * Передача идет в отдельном потоке: при большом числе таких документов она ждет места в очереди
+     * и не должна задерживать запуск приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        Thread resumer = new Thread(() -> {
+            List<Long> unfinished = documentRepository.findByStatus(Document.Status.PROCESSING).stream()
+                    .map(Document::getId)
+                    .toList();
+            if (!unfinished.isEmpty()) {
+                logger.info("Возобновлена обработка документов: {}", unfinished.size());
+            }
+            for (Long documentId : unfinished) {
+                if (hashStage.isShutdown()) {
+                    return;
+                }
+                inFlight.incrementAndGet();
+                submit(documentId, null);
+            }
+        }, "ingestion-resume");
+        resumer.setDaemon(true);
+        resumer.start();
+    }
+
+    // Стадия 1: хэш и перенос файла из временного каталога в контентно-адресуемое хранилище
+    private boolean storeFile(IngestionJob job) throws Exception {
+        Document document = documentRepository.findById(job.documentId).orElse(null);
+        if (document == null) {
+            return false;
+        }
+        if (document.getFileDigest() == null) {
+            Path stagedFile = Paths.get(document.getFilePath());
+            if (job.digest == null) {
+                job.digest = hash(stagedFile);
+            }
+            long size = Files.size(stagedFile);
+            transactionTemplate.executeWithoutResult(tx -> {
+                Document stored = documentRepository.findByIdForUpdate(job.documentId).orElseThrow();
+                ContentAddressedFileStore.StoredBlob blob = contentAddressedFileStore.store(
+                        stagedFile, job.digest, size, stored.getFileType());
+                stored.setFilePath(blob.digest());
+                stored.setFileDigest(blob.digest());
+                stored.setFileSize(blob.size());
+                documentRepository.save(stored);
+            });
+        } else {
+            job.digest = document.getFileDigest();
+        }
+        return true;
+    }
+
+    // Стадия 2: извлечение текста для поиска; ошибка не прерывает обработку
+    private boolean extractText(IngestionJob job) {
+        documentRepository.findById(job.documentId).ifPresent(document -> job.text = textExtractor.extractText(document));
+        return true;
+    }
+
+    // Стадия 3: предпросмотр для изображений и PDF; ошибка не прерывает обработку
+    private boolean buildThumbnail(IngestionJob job) {
+        try {
+            Document document = documentRepository.findById(job.documentId).orElse(null);
+            if (document != null && DocumentPreviewService.isSupported(document.getFileType())) {
+                documentPreviewService.getPreview(document.getId(), document.getFileDigest(),
+                        document.getFilePath(), document.getFileType());
+            }
+        } catch (Exception e) {
+            logger.warn("Не удалось построить миниатюру документа {}: {}", job.documentId, e.getMessage());
+        }
+        return true;
+    }
+
+    private void complete(IngestionJob job) {
+        try {
+            changeStatusWithRetry(job.documentId, Document.Status.DRAFT, "Документ обработан");
+        } catch (Exception e) {
+            // Документ не должен остаться в PROCESSING: такой документ нельзя изменить до перезапуска
+            fail(job, "complete", e);
+            return;
+        }
+        try {
+            documentSearchService.indexDocumentAsync(job.documentId, job.text);
+        } finally {
+            finish(job);
+        }
+    }
+
+    private void fail(IngestionJob job, String stage, Exception e) {
+        logger.error("Ошибка обработки документа {} на стадии {}: {}", job.documentId, stage, e.getMessage(), e);
+        try {
+            changeStatusWithRetry(job.documentId, Document.Status.FAILED, "Ошибка обработки файла: " + e.getMessage());
+        } catch (Exception statusError) {
+            if (statusError instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Не удалось перевести документ {} в FAILED: {}", job.documentId, statusError.getMessage());
+        } finally {
+            finish(job);
+        }
+    }
+
+    /**
+     * Смена статуса с несколькими попытками: сбой БД не должен оставлять документ в PROCESSING
+     */
+    private void changeStatusWithRetry(Long documentId, Document.Status newStatus, String comment)
+            throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                changeStatus(documentId, newStatus, comment);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= STATUS_CHANGE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Не удалось перевести документ {} в {} (попытка {}): {}",
+                        documentId, newStatus, attempt, e.getMessage());
+                Thread.sleep(STATUS_CHANGE_BACKOFF_MILLIS * attempt);
+            }
+        }
+    }
+
+    private void changeStatus(Long documentId, Document.Status newStatus, String comment) {
+        transactionTemplate.executeWithoutResult(tx -> documentRepository.findByIdForUpdate(documentId).ifPresent(document -> {
+            Document.Status oldStatus = document.getStatus();
+            if (oldStatus != Document.Status.PROCESSING) {
+                return;
+            }
+            document.setStatus(newStatus);
+            document.setUpdatedAt(LocalDateTime.now());
+            Document saved = documentRepository.save(document);
+
+            statusHistoryRepository.save(StatusHistory.builder()
+                    .document(saved)
+                    .user(saved.getAuthor())
+                    .status(newStatus)
+                    .comment(comment)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+            documentCounterService.statusChanged(saved.getDepartment(), oldStatus, newStatus);
+            documentCache.invalidate(saved.getId());
+        }));
+    }
+
+    private void finish(IngestionJob job) {
+        inFlight.decrementAndGet();
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = ContentAddressedFileStore.newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return ContentAddressedFileStore.toHex(digest);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        hashStage.shutdown();
+        extractStage.shutdown();
+        thumbnailStage.shutdown();
+    }
+
+    /**
+     * Шаг стадии; false означает, что документ удален и обработку нужно прекратить
+     */
+    private interface Step {
+        boolean run(IngestionJob job) throws Exception;
+    }
+
+    /**
+     * Стадия конвейера: ограниченный пул с ограниченной очередью.
+     * Если очередь заполнена, поток предыдущей стадии ждет освобождения места;
+     * после остановки стадии новые задачи отклоняются.
+     * После последней стадии документ переводится в DRAFT.
+     */
+    private final class Stage {
+
+        private final String name;
+        private final Step step;
+        private final Stage next;
+        private final ThreadPoolExecutor executor;
+        private final Timer timer;
+
+        Stage(String name, int threads, int capacity, MeterRegistry meterRegistry, Step step, Stage next) {
+            this.name = name;
+            this.step = step;
+            this.next = next;
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(capacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "ingestion-" + name + "-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, pool) -> {
+                        // Ожидание места в очереди, пока стадия не остановлена: после остановки очередь
+                        // никто не разбирает
+                        try {
+                            while (!pool.isShutdown()) {
+                                if (pool.getQueue().offer(runnable, 100, TimeUnit.MILLISECONDS)) {
+                                    if (pool.isShutdown() && pool.getQueue().remove(runnable)) {
+                                        break;
+                                    }
+                                    return;
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(e);
+                        }
+                        throw new RejectedExecutionException("Стадия обработки " + name + " остановлена");
+                    });
+            Gauge.builder("sctd.ingestion.queue.size", executor, pool -> pool.getQueue().size())
+                    .description("Число документов в очереди стадии обработки")
+                    .tag("stage", name)
+                    .register(meterRegistry);
+            this.timer = Timer.builder("sctd.ingestion.stage.duration")
+                    .description("Время выполнения стадии обработки документа")
+                    .tag("stage", name)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        void submit(IngestionJob job) {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                boolean proceed;
+                try {
+                    proceed = step.run(job);
+                } catch (Exception e) {
+                    fail(job, name, e);
+                    return;
+                } finally {
+                    // Ожидание места в очереди следующей стадии в длительность не входит
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                if (!proceed) {
+                    finish(job);
+                } else if (next != null) {
+                    try {
+                        next.submit(job);
+                    } catch (RejectedExecutionException e) {
+                        // Документ остается в PROCESSING и будет обработан после перезапуска
+                        logger.warn("Обработка документа {} прервана остановкой: {}", job.documentId, e.getMessage());
+                        finish(job);
+                    }
+                } else {
+                    complete(job);
+                }
+            });
+        }
+
+        boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        void shutdown() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
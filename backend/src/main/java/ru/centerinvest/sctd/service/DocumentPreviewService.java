@@ -0,0 +1,279 @@
+package ru.centerinvest.sctd.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.centerinvest.sctd.storage.FileStorage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Предпросмотр документов: первая страница PDF или изображение, уменьшенные до PNG заданного размера.
+ * Предпросмотр строится при обработке загруженного документа или при первом запросе и сохраняется
+ * в хранилище рядом с файлом (ключ &lt;digest&gt;.thumb.png), а также в локальном кэше на диске
+ * с вытеснением по бюджету в байтах. Одновременные запросы одного документа ждут единственного построения,
+ * число одновременных построений ограничено.
+ * <p>
+ * Метрики: sctd.preview.requests с тегом result (hit, stored, rendered) и sctd.preview.cache.size.
+ */
+@Service
+public class DocumentPreviewService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentPreviewService.class);
+
+    private static final String THUMBNAIL_SUFFIX = ".thumb.png";
+
+    private static final String PDF_TYPE = "application/pdf";
+
+    private final ContentAddressedFileStore contentAddressedFileStore;
+    private final FileStorage fileStorage;
+    private final PreviewDiskCache diskCache;
+    private final int size;
+    private final Semaphore renderPermits;
+
+    // Построения в процессе: повторный запрос того же ключа ждет результата первого
+    private final ConcurrentHashMap<String, CompletableFuture<Optional<byte[]>>> inProgress = new ConcurrentHashMap<>();
+
+    private final Counter cacheHits;
+    private final Counter storedHits;
+    private final Counter rendered;
+
+    public DocumentPreviewService(ContentAddressedFileStore contentAddressedFileStore,
+                                  FileStorage fileStorage,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${preview.cache-dir:./preview-cache}") String cacheDir,
+                                  @Value("${preview.cache.max-bytes:67108864}") long maxCacheBytes,
+                                  @Value("${preview.size:256}") int size,
+                                  @Value("${preview.max-concurrent-renders:2}") int maxConcurrentRenders) throws IOException {
+        this.contentAddressedFileStore = contentAddressedFileStore;
+        this.fileStorage = fileStorage;
+        this.diskCache = new PreviewDiskCache(Paths.get(cacheDir).toAbsolutePath().normalize(), maxCacheBytes);
+        this.size = size;
+        this.renderPermits = new Semaphore(maxConcurrentRenders);
+
+        this.cacheHits = requestCounter(meterRegistry, "hit");
+        this.storedHits = requestCounter(meterRegistry, "stored");
+        this.rendered = requestCounter(meterRegistry, "rendered");
+        Gauge.builder("sctd.preview.cache.size", diskCache, PreviewDiskCache::size)
+                .description("Объем локального кэша предпросмотров")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("sctd.preview.requests")
+                .description("Запросы предпросмотра документов")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Поддерживается ли предпросмотр для типа файла
+     */
+    public static boolean isSupported(String fileType) {
+        return fileType != null && (isImage(fileType) || fileType.toLowerCase().startsWith(PDF_TYPE));
+    }
+
+    /**
+     * PNG предпросмотра документа; пусто, если тип файла не поддерживается или файл не удалось отрисовать
+     * (например, PDF защищен паролем). Документы без digest ссылаются на файл напрямую.
+     */
+    public Optional<byte[]> getPreview(Long documentId, String digest, String filePath, String fileType) throws IOException {
+        if (!isSupported(fileType)) {
+            return Optional.empty();
+        }
+        String key = digest != null ? digest + ".png" : "document-" + documentId + ".png";
+        byte[] cached = diskCache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            return Optional.of(cached);
+        }
+
+        CompletableFuture<Optional<byte[]>> pending = new CompletableFuture<>();
+        CompletableFuture<Optional<byte[]>> existing = inProgress.putIfAbsent(key, pending);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            Optional<byte[]> preview = load(digest, filePath, fileType);
+            if (preview.isPresent()) {
+                diskCache.put(key, preview.get());
+            }
+            pending.complete(preview);
+            return preview;
+        } catch (IOException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(key, pending);
+        }
+    }
+
+    private Optional<byte[]> load(String digest, String filePath, String fileType) throws IOException {
+        String thumbnailKey = digest != null ? digest + THUMBNAIL_SUFFIX : null;
+        if (thumbnailKey != null) {
+            try (InputStream in = fileStorage.read(thumbnailKey)) {
+                byte[] stored = in.readAllBytes();
+                storedHits.increment();
+                return Optional.of(stored);
+            } catch (NoSuchFileException e) {
+                // Предпросмотр еще не построен
+            }
+        }
+
+        byte[] preview;
+        try {
+            renderPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание построения предпросмотра прервано");
+        }
+        try {
+            preview = isImage(fileType) ? renderImage(digest, filePath) : renderPdf(digest, filePath);
+        } finally {
+            renderPermits.release();
+        }
+        if (preview == null) {
+            return Optional.empty();
+        }
+        rendered.increment();
+        if (thumbnailKey != null) {
+            fileStorage.write(thumbnailKey, new ByteArrayInputStream(preview));
+        }
+        return Optional.of(preview);
+    }
+
+    private static Optional<byte[]> await(CompletableFuture<Optional<byte[]>> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ожидание построения предпросмотра прервано");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static boolean isImage(String fileType) {
+        return fileType.toLowerCase().startsWith("image/");
+    }
+
+    /**
+     * Изображение читается с прореживанием строк и столбцов, чтобы не декодировать большие снимки целиком
+     */
+    private byte[] renderImage(String digest, String filePath) throws IOException {
+        BufferedImage source;
+        try (InputStream in = contentAddressedFileStore.open(digest, filePath, 0, -1);
+             ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = imageIn != null ? ImageIO.getImageReaders(imageIn) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, largestSide / (size * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        return encode(scale(source));
+    }
+
+    private byte[] renderPdf(String digest, String filePath) throws IOException {
+        Optional<Path> localPath = contentAddressedFileStore.localPath(digest, filePath);
+        if (localPath.isPresent()) {
+            return renderPdf(localPath.get());
+        }
+        // Удаленное хранилище или сжатый файл: PDF требует произвольного доступа, поэтому копируется на диск
+        Path tempFile = Files.createTempFile(contentAddressedFileStore.getTempDir(), "preview-", ".part");
+        try {
+            try (InputStream in = contentAddressedFileStore.open(digest, filePath, 0, -1)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return renderPdf(tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private byte[] renderPdf(Path file) throws IOException {
+        try (PDDocument document = Loader.loadPDF(file.toFile())) {
+            if (document.getNumberOfPages() == 0) {
+                return null;
+            }
+            PDRectangle page = document.getPage(0).getCropBox();
+            float largestSide = Math.max(page.getWidth(), page.getHeight());
+            float scale = largestSide > 0 ? Math.min(1f, size / largestSide) : 1f;
+            BufferedImage image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+            return encode(scale(image));
+        } catch (InvalidPasswordException e) {
+            logger.debug("Предпросмотр защищенного PDF не строится: {}", file);
+            return null;
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source) {
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package ru.centerinvest.sctd.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.repository.DocumentSummary;
+
+/**
+ * Выборки списка документов с фильтрацией по статусу и отделу.
+ * Пустой фильтр передается как null.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class DocumentQueryService {
+
+    private final DocumentRepository documentRepository;
+    private final DocumentCounterService documentCounterService;
+
+    /**
+     * Постраничная выборка через OFFSET; общее число документов — см. {@link #count}
+     */
+    public Slice<Document> findPage(Document.Status status, String department, Pageable pageable) {
+        if (status != null && department != null) {
+            return documentRepository.findByStatusAndDepartment(status, department, pageable);
+        } else if (status != null) {
+            return documentRepository.findByStatus(status, pageable);
+        } else if (department != null) {
+            return documentRepository.findByDepartment(department, pageable);
+        }
+        return documentRepository.findAllBy(pageable);
+    }
+
+    /**
+     * Курсорная выборка: следующая страница ищется по индексу (createdAt, id) без подсчета
+     */
+    public Window<Document> findWindow(Document.Status status, String department, ScrollPosition position, int size) {
+        Limit limit = Limit.of(size);
+        if (status != null && department != null) {
+            return documentRepository.findByStatusAndDepartmentOrderByCreatedAtDescIdDesc(status, department, position, limit);
+        } else if (status != null) {
+            return documentRepository.findByStatusOrderByCreatedAtDescIdDesc(status, position, limit);
+        } else if (department != null) {
+            return documentRepository.findByDepartmentOrderByCreatedAtDescIdDesc(department, position, limit);
+        }
+        return documentRepository.findAllByOrderByCreatedAtDescIdDesc(position, limit);
+    }
+
+    public Slice<DocumentSummary> findSummaryPage(Document.Status status, String department, Pageable pageable) {
+        if (status != null && department != null) {
+            return documentRepository.findSummariesByStatusAndDepartment(status, department, pageable);
+        } else if (status != null) {
+            return documentRepository.findSummariesByStatus(status, pageable);
+        } else if (department != null) {
+            return documentRepository.findSummariesByDepartment(department, pageable);
+        }
+        return documentRepository.findSummariesBy(pageable);
+    }
+
+    public Window<DocumentSummary> findSummaryWindow(Document.Status status, String department,
+                                                     ScrollPosition position, int size) {
+        Limit limit = Limit.of(size);
+        if (status != null && department != null) {
+            return documentRepository.findSummariesByStatusAndDepartmentOrderByCreatedAtDescIdDesc(
+                    status, department, position, limit);
+        } else if (status != null) {
+            return documentRepository.findSummariesByStatusOrderByCreatedAtDescIdDesc(status, position, limit);
+        } else if (department != null) {
+            return documentRepository.findSummariesByDepartmentOrderByCreatedAtDescIdDesc(department, position, limit);
+        }
+        return documentRepository.findSummariesByOrderByCreatedAtDescIdDesc(position, limit);
+    }
+
+    /**
+     * Общее число документов по фильтру из материализованных счетчиков
+     */
+    public long count(Document.Status status, String department) {
+        return documentCounterService.count(status, department);
+    }
+}
@@ -0,0 +1,330 @@
+package ru.centerinvest.sctd.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.DocumentRevision;
+import ru.centerinvest.sctd.model.User;
+import ru.centerinvest.sctd.repository.DocumentFileInfo;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.repository.DocumentRevisionRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Редакции документов.
+ * Первая редакция и каждая N-я хранятся полным снимком, остальные — бинарной дельтой
+ * к предыдущей редакции ({@link BinaryDelta}). Текущее содержимое документа всегда хранится целиком,
+ * поэтому скачивание документа не требует восстановления; восстановление старой редакции
+ * применяет не больше N-1 дельт к ближайшему снимку.
+ * <p>
+ * Полное содержимое предыдущей редакции, хранящейся дельтой, освобождается при загрузке следующей
+ * и удаляется сборщиком мусора хранилища.
+ */
+@Service
+public class DocumentRevisionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRevisionService.class);
+
+    private final DocumentRepository documentRepository;
+    private final DocumentRevisionRepository documentRevisionRepository;
+    private final ContentAddressedFileStore contentAddressedFileStore;
+    private final DocumentSearchService documentSearchService;
+    private final DocumentCache documentCache;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int snapshotInterval;
+    private final long maxDeltaFileSize;
+    private final double maxDeltaRatio;
+
+    public DocumentRevisionService(DocumentRepository documentRepository,
+                                   DocumentRevisionRepository documentRevisionRepository,
+                                   ContentAddressedFileStore contentAddressedFileStore,
+                                   DocumentSearchService documentSearchService,
+                                   DocumentCache documentCache,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${revisions.snapshot-interval:10}") int snapshotInterval,
+                                   @Value("${revisions.delta.max-file-size:268435456}") long maxDeltaFileSize,
+                                   @Value("${revisions.delta.max-ratio:0.5}") double maxDeltaRatio) {
+        this.documentRepository = documentRepository;
+        this.documentRevisionRepository = documentRevisionRepository;
+        this.contentAddressedFileStore = contentAddressedFileStore;
+        this.documentSearchService = documentSearchService;
+        this.documentCache = documentCache;
+        this.transactionTemplate = transactionTemplate;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        // Файлы отображаются в память целиком, поэтому размер ограничен 2 ГБ
+        this.maxDeltaFileSize = Math.min(maxDeltaFileSize, Integer.MAX_VALUE);
+        this.maxDeltaRatio = maxDeltaRatio;
+    }
+
+    /**
+     * Содержимое редакции: либо блоб с полным содержимым, либо восстановленный временный файл,
+     * который вызывающий должен удалить
+     */
+    public record RevisionContent(DocumentRevision revision, String digest, Path reconstructedFile) {
+    }
+
+    /**
+     * Загрузка новой редакции из временного файла с уже посчитанным дайджестом.
+     * Временный файл переносится в хранилище или удаляется.
+     */
+    public DocumentRevision uploadRevision(User author, Long documentId, String fileName, String fileType,
+                                           String comment, Path file, long fileSize, String digest) throws IOException {
+        Path deltaFile = null;
+        try {
+            Document document = documentRepository.findById(documentId)
+                    .orElseThrow(() -> new NoSuchElementException("Документ не найден"));
+            if (document.getStatus() == Document.Status.PROCESSING) {
+                throw new IllegalStateException("Документ находится в обработке");
+            }
+            if (document.getStatus() == Document.Status.FAILED) {
+                throw new IllegalStateException("Файл документа не удалось обработать");
+            }
+            // Имя и тип не переданы — остаются прежними
+            String revisionFileName = fileName == null || fileName.isEmpty() ? document.getFileName() : fileName;
+            String revisionFileType = fileType == null || fileType.isEmpty() ? document.getFileType() : fileType;
+            String baseDigest = document.getFileDigest();
+            Optional<DocumentRevision> previous = documentRevisionRepository.findFirstByDocumentIdOrderByRevisionNumberDesc(documentId);
+            int revisionNumber = previous.map(revision -> revision.getRevisionNumber() + 1).orElse(2);
+
+            // Дельта строится до транзакции: это самая долгая часть, блокировки на это время не нужны
+            if (baseDigest != null && !baseDigest.equals(digest) && !isSnapshotDue(documentId, revisionNumber, fileSize)) {
+                deltaFile = encodeDelta(document, file, fileSize);
+            }
+            Path delta = deltaFile;
+            String deltaDigest = delta != null ? hashFile(delta) : null;
+            long deltaSize = delta != null ? Files.size(delta) : 0;
+            DocumentRevision saved = transactionTemplate.execute(tx -> {
+                Document locked = documentRepository.findByIdForUpdate(documentId).orElseThrow();
+                if (!Objects.equals(locked.getFileDigest(), baseDigest)
+                        || documentRevisionRepository.findFirstByDocumentIdOrderByRevisionNumberDesc(documentId)
+                        .map(DocumentRevision::getRevisionNumber).orElse(1) != revisionNumber - 1) {
+                    throw new IllegalStateException("Документ изменен во время загрузки редакции, повторите загрузку");
+                }
+                if (previous.isEmpty()) {
+                    createInitialRevision(locked);
+                }
+
+                // Текущее содержимое документа хранится целиком
+                ContentAddressedFileStore.StoredBlob content = contentAddressedFileStore.store(file, digest, fileSize, revisionFileType);
+                DocumentRevision.DocumentRevisionBuilder revision = DocumentRevision.builder()
+                        .document(locked)
+                        .revisionNumber(revisionNumber)
+                        .author(author)
+                        .contentDigest(content.digest())
+                        .fileName(revisionFileName)
+                        .fileType(revisionFileType)
+                        .fileSize(content.size())
+                        .comment(comment)
+                        .createdAt(LocalDateTime.now());
+                if (delta != null) {
+                    // Дельта текстового документа сжимается хранилищем так же, как сам документ
+                    ContentAddressedFileStore.StoredBlob deltaBlob = contentAddressedFileStore.store(
+                            delta, deltaDigest, deltaSize, revisionFileType);
+                    revision.storage(DocumentRevision.Storage.DELTA)
+                            .blobDigest(deltaBlob.digest())
+                            .storedSize(deltaBlob.size());
+                } else {
+                    contentAddressedFileStore.retain(content.digest());
+                    revision.storage(DocumentRevision.Storage.SNAPSHOT)
+                            .blobDigest(content.digest())
+                            .storedSize(content.size());
+                }
+                DocumentRevision created = documentRevisionRepository.save(revision.build());
+
+                // Ссылка документа на прежнее содержимое снимается; снимок или дельта редакции его сохраняют
+                contentAddressedFileStore.release(locked.getFileDigest());
+                locked.setFilePath(content.digest());
+                locked.setFileDigest(content.digest());
+                locked.setFileName(revisionFileName);
+                locked.setFileType(revisionFileType);
+                locked.setFileSize(content.size());
+                locked.setUpdatedAt(LocalDateTime.now());
+                documentRepository.save(locked);
+                documentCache.invalidate(documentId);
+                documentSearchService.indexDocumentAsync(documentId);
+                return created;
+            });
+            logger.info("Документ {}: сохранена редакция {} ({})", documentId, revisionNumber, saved.getStorage());
+            return saved;
+        } finally {
+            Files.deleteIfExists(file);
+            if (deltaFile != null) {
+                Files.deleteIfExists(deltaFile);
+            }
+        }
+    }
+
+    /**
+     * Содержимое редакции. Текущая редакция и снимки отдаются из хранилища напрямую,
+     * остальные восстанавливаются от ближайшего снимка во временный файл.
+     */
+    public RevisionContent openRevision(Long documentId, int revisionNumber) throws IOException {
+        DocumentRevision revision = documentRevisionRepository.findByDocumentIdAndRevisionNumber(documentId, revisionNumber)
+                .orElseThrow(() -> new NoSuchElementException("Редакция не найдена"));
+        if (revision.getStorage() == DocumentRevision.Storage.SNAPSHOT) {
+            return new RevisionContent(revision, revision.getBlobDigest(), null);
+        }
+        String currentDigest = documentRepository.findFileInfoById(documentId)
+                .map(DocumentFileInfo::getFileDigest)
+                .orElse(null);
+        if (revision.getContentDigest().equals(currentDigest)) {
+            return new RevisionContent(revision, currentDigest, null);
+        }
+        return new RevisionContent(revision, null, reconstruct(revision));
+    }
+
+    private Path reconstruct(DocumentRevision revision) throws IOException {
+        List<DocumentRevision> chain = documentRevisionRepository.findReconstructionChain(
+                revision.getDocument().getId(), revision.getRevisionNumber());
+        if (chain.isEmpty() || chain.get(0).getStorage() != DocumentRevision.Storage.SNAPSHOT) {
+            throw new IOException("Не найден снимок для восстановления редакции " + revision.getRevisionNumber());
+        }
+
+        Path current = materialize(chain.get(0).getBlobDigest());
+        try {
+            for (DocumentRevision step : chain.subList(1, chain.size())) {
+                Path next = Files.createTempFile(contentAddressedFileStore.getTempDir(), "revision-", ".part");
+                try (FileChannel base = FileChannel.open(current, StandardOpenOption.READ);
+                     InputStream delta = contentAddressedFileStore.open(step.getBlobDigest(), null, 0, -1);
+                     FileChannel out = FileChannel.open(next, StandardOpenOption.WRITE)) {
+                    BinaryDelta.apply(base, delta, out);
+                } catch (IOException e) {
+                    Files.deleteIfExists(next);
+                    throw e;
+                }
+                Files.delete(current);
+                current = next;
+            }
+            if (!hashFile(current).equals(revision.getContentDigest())) {
+                throw new IOException("Контрольная сумма восстановленной редакции не совпадает");
+            }
+            return current;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(current);
+            throw e;
+        }
+    }
+
+    /**
+     * Снимок обязателен каждые snapshotInterval редакций, а также если дельты после последнего снимка
+     * в сумме уже больше нового файла: восстановление тогда дороже хранения снимка
+     */
+    private boolean isSnapshotDue(Long documentId, int revisionNumber, long fileSize) {
+        if (fileSize > maxDeltaFileSize || (revisionNumber - 1) % snapshotInterval == 0) {
+            return true;
+        }
+        long deltaBytes = 0;
+        for (DocumentRevision revision : documentRevisionRepository.findReconstructionChain(documentId, revisionNumber - 1)) {
+            if (revision.getStorage() == DocumentRevision.Storage.DELTA) {
+                deltaBytes += revision.getStoredSize();
+            }
+        }
+        return deltaBytes > fileSize;
+    }
+
+    /**
+     * Дельта нового файла к текущему содержимому документа; null, если дельта не дает выигрыша
+     */
+    private Path encodeDelta(Document document, Path file, long fileSize) throws IOException {
+        if (document.getFileSize() > maxDeltaFileSize) {
+            return null;
+        }
+        Optional<Path> localBase = contentAddressedFileStore.localPath(document.getFileDigest(), document.getFilePath());
+        Path base = localBase.isPresent() ? localBase.get() : materialize(document.getFileDigest());
+        Path delta = Files.createTempFile(contentAddressedFileStore.getTempDir(), "delta-", ".part");
+        try {
+            try (FileChannel baseChannel = FileChannel.open(base, StandardOpenOption.READ);
+                 FileChannel targetChannel = FileChannel.open(file, StandardOpenOption.READ);
+                 OutputStream out = Files.newOutputStream(delta)) {
+                MappedByteBuffer baseBuffer = baseChannel.map(FileChannel.MapMode.READ_ONLY, 0, baseChannel.size());
+                MappedByteBuffer targetBuffer = targetChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+                BinaryDelta.encode(baseBuffer, targetBuffer, out);
+            }
+            if (Files.size(delta) > fileSize * maxDeltaRatio) {
+                Files.delete(delta);
+                return null;
+            }
+            return delta;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(delta);
+            throw e;
+        } finally {
+            if (localBase.isEmpty()) {
+                Files.deleteIfExists(base);
+            }
+        }
+    }
+
+    /**
+     * Первая редакция — содержимое документа до загрузки редакций; файлы старых документов
+     * при этом переносятся в контентно-адресуемое хранилище
+     */
+    private void createInitialRevision(Document document) {
+        String digest = document.getFileDigest();
+        if (digest == null) {
+            try (InputStream in = contentAddressedFileStore.open(null, document.getFilePath(), 0, -1)) {
+                digest = contentAddressedFileStore.store(in, document.getFileType()).digest();
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось прочитать файл документа: " + e.getMessage(), e);
+            }
+            // Эта ссылка станет ссылкой документа и будет освобождена вместе с прежним содержимым
+            contentAddressedFileStore.retain(digest);
+            document.setFileDigest(digest);
+        } else {
+            contentAddressedFileStore.retain(digest);
+        }
+        documentRevisionRepository.save(DocumentRevision.builder()
+                .document(document)
+                .revisionNumber(1)
+                .author(document.getAuthor())
+                .storage(DocumentRevision.Storage.SNAPSHOT)
+                .blobDigest(digest)
+                .storedSize(document.getFileSize())
+                .contentDigest(digest)
+                .fileName(document.getFileName())
+                .fileType(document.getFileType())
+                .fileSize(document.getFileSize())
+                .createdAt(document.getCreatedAt())
+                .build());
+    }
+
+    private Path materialize(String digest) throws IOException {
+        Path file = Files.createTempFile(contentAddressedFileStore.getTempDir(), "revision-", ".part");
+        try (InputStream in = contentAddressedFileStore.open(digest, null, 0, -1);
+             OutputStream out = Files.newOutputStream(file)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static String hashFile(Path file) throws IOException {
+        MessageDigest digest = ContentAddressedFileStore.newDigest();
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            in.transferTo(out);
+        }
+        return ContentAddressedFileStore.toHex(digest);
+    }
+}
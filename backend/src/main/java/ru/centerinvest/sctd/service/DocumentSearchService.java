@@ -0,0 +1,336 @@
+package ru.centerinvest.sctd.service;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.centerinvest.sctd.model.Comment;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.repository.CommentRepository;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Встроенный полнотекстовый индекс документов (Lucene).
+ * Индексируются название, описание, комментарии и текст файла с русской морфологией.
+ * Индекс хранится на локальном диске и обновляется инкрементально в фоновом потоке.
+ * Каждая фиксация индекса хранит метку времени, до которой учтены все изменения документов;
+ * при старте документы, измененные после метки, переиндексируются — так восстанавливаются изменения,
+ * не успевшие попасть в индекс до аварийной остановки.
+ */
+@Service
+public class DocumentSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentSearchService.class);
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_STATUS = "status";
+    private static final String FIELD_DEPARTMENT = "department";
+    private static final String FIELD_TITLE = "title";
+    private static final String FIELD_DESCRIPTION = "description";
+    private static final String FIELD_COMMENTS = "comments";
+    private static final String FIELD_CONTENT = "content";
+
+    private static final int REBUILD_BATCH_SIZE = 200;
+
+    // Метка в данных фиксации индекса: изменения документов до этого времени в индексе учтены
+    private static final String COMMIT_INDEXED_UNTIL = "indexedUntil";
+    // Запас на транзакции, которые изменили документ до метки, а зафиксированы после нее
+    private static final Duration CATCH_UP_OVERLAP = Duration.ofMinutes(5);
+
+    private final DocumentRepository documentRepository;
+    private final CommentRepository commentRepository;
+    private final DocumentTextExtractor textExtractor;
+    private final boolean rebuildOnStartup;
+
+    private final Analyzer analyzer = new RussianAnalyzer();
+    private final Directory directory;
+    private final IndexWriter indexWriter;
+    private final SearcherManager searcherManager;
+
+    // Метка последней фиксации до запуска; новая метка пишется только после догрузки индекса
+    private final LocalDateTime startupIndexedUntil;
+    private volatile boolean caughtUp;
+
+    // Все изменения индекса выполняются в одном потоке, чтобы не блокировать gRPC потоки
+    private final ScheduledExecutorService indexExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "document-search-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DocumentSearchService(DocumentRepository documentRepository,
+                                 CommentRepository commentRepository,
+                                 DocumentTextExtractor textExtractor,
+                                 @Value("${search.index-dir:./search-index}") String indexDir,
+                                 @Value("${search.rebuild-on-startup:false}") boolean rebuildOnStartup) throws IOException {
+        this.documentRepository = documentRepository;
+        this.commentRepository = commentRepository;
+        this.textExtractor = textExtractor;
+        this.rebuildOnStartup = rebuildOnStartup;
+
+        this.directory = FSDirectory.open(Paths.get(indexDir));
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        this.indexWriter = new IndexWriter(directory, config);
+        this.searcherManager = new SearcherManager(indexWriter, null);
+        this.startupIndexedUntil = committedIndexedUntil();
+
+        // Периодическая фиксация изменений на диск
+        indexExecutor.scheduleWithFixedDelay(this::commitChanges, 5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Результат поиска: идентификаторы документов в порядке релевантности
+     */
+    public record SearchResult(List<Long> documentIds, long totalHits) {
+    }
+
+    public SearchResult search(String queryText, Document.Status status, String department, int page, int size) {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, Map.of(
+                FIELD_TITLE, 4.0f,
+                FIELD_DESCRIPTION, 2.0f,
+                FIELD_COMMENTS, 1.0f,
+                FIELD_CONTENT, 1.0f));
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query textQuery = parser.parse(queryText);
+        if (textQuery == null) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+
+        BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
+                .add(textQuery, BooleanClause.Occur.MUST);
+        if (status != null) {
+            queryBuilder.add(new TermQuery(new Term(FIELD_STATUS, status.name())), BooleanClause.Occur.FILTER);
+        }
+        if (department != null) {
+            queryBuilder.add(new TermQuery(new Term(FIELD_DEPARTMENT, department)), BooleanClause.Occur.FILTER);
+        }
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                int from = page * size;
+                TopDocs topDocs = searcher.search(queryBuilder.build(), from + size);
+                List<Long> documentIds = new ArrayList<>(size);
+                ScoreDoc[] hits = topDocs.scoreDocs;
+                for (int i = from; i < hits.length; i++) {
+                    String id = searcher.storedFields().document(hits[i].doc).get(FIELD_ID);
+                    documentIds.add(Long.parseLong(id));
+                }
+                return new SearchResult(documentIds, topDocs.totalHits.value);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при поиске документов", e);
+        }
+    }
+
+    /**
+     * Асинхронная переиндексация документа после создания, смены статуса или комментария
+     */
+    public void indexDocumentAsync(Long documentId) {
+        indexDocumentAsync(documentId, null);
+    }
+
+    /**
+     * Переиндексация с уже извлеченным текстом файла (из конвейера обработки), без повторного чтения файла
+     */
+    public void indexDocumentAsync(Long documentId, String content) {
+        // Внутри транзакции индексируем только после фиксации, иначе индексатор не увидит изменений
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submitIndexing(documentId, content);
+                }
+            });
+        } else {
+            submitIndexing(documentId, content);
+        }
+    }
+
+    private void submitIndexing(Long documentId, String content) {
+        indexExecutor.execute(() -> {
+            try {
+                documentRepository.findById(documentId).ifPresentOrElse(
+                        document -> indexDocuments(List.of(document),
+                                content != null ? Map.of(documentId, content) : Map.of()),
+                        () -> deleteDocument(documentId));
+                searcherManager.maybeRefresh();
+            } catch (Exception e) {
+                logger.error("Ошибка индексации документа {}: {}", documentId, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Восстановление индекса при старте выполняется в фоне пакетами по id,
+     * поэтому готовность приложения не ждет прохода по всей таблице.
+     * Пустой индекс или индекс без метки фиксации строится заново, иначе догружаются документы,
+     * измененные после метки.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfNeeded() {
+        if (rebuildOnStartup || indexWriter.getDocStats().numDocs == 0 || startupIndexedUntil == null) {
+            indexExecutor.execute(() -> reindex(null));
+        } else {
+            indexExecutor.execute(() -> reindex(startupIndexedUntil.minus(CATCH_UP_OVERLAP)));
+        }
+    }
+
+    /**
+     * Переиндексация всех документов или только измененных начиная с changedSince
+     */
+    private void reindex(LocalDateTime changedSince) {
+        if (changedSince == null) {
+            logger.info("Запущено восстановление поискового индекса");
+        } else {
+            logger.info("Запущена догрузка поискового индекса: документы, измененные с {}", changedSince);
+        }
+        // Метка — начало прохода: изменения, сделанные во время него, индексируются после и в метку не входят
+        LocalDateTime started = LocalDateTime.now();
+        long indexed = 0;
+        Long lastId = 0L;
+        try {
+            List<Document> batch;
+            do {
+                batch = changedSince == null
+                        ? documentRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(REBUILD_BATCH_SIZE))
+                        : documentRepository.findByUpdatedAtGreaterThanEqualAndIdGreaterThanOrderByIdAsc(
+                        changedSince, lastId, Limit.of(REBUILD_BATCH_SIZE));
+                if (!batch.isEmpty()) {
+                    indexDocuments(batch, Map.of());
+                    searcherManager.maybeRefresh();
+                    lastId = batch.get(batch.size() - 1).getId();
+                    indexed += batch.size();
+                }
+            } while (batch.size() == REBUILD_BATCH_SIZE);
+            commit(started);
+            caughtUp = true;
+            logger.info("Поисковый индекс обновлен, документов: {}", indexed);
+        } catch (Exception e) {
+            logger.error("Ошибка восстановления поискового индекса: {}", e.getMessage(), e);
+        }
+    }
+
+    private LocalDateTime committedIndexedUntil() {
+        for (Map.Entry<String, String> entry : indexWriter.getLiveCommitData()) {
+            if (COMMIT_INDEXED_UNTIL.equals(entry.getKey())) {
+                return LocalDateTime.parse(entry.getValue());
+            }
+        }
+        return null;
+    }
+
+    private void indexDocuments(List<Document> documents, Map<Long, String> contents) {
+        List<Long> documentIds = documents.stream().map(Document::getId).toList();
+        Map<Long, StringBuilder> commentsByDocument = new HashMap<>();
+        for (Comment comment : commentRepository.findByDocumentIdsWithUser(documentIds)) {
+            commentsByDocument.computeIfAbsent(comment.getDocument().getId(), id -> new StringBuilder())
+                    .append(comment.getText()).append('\n');
+        }
+
+        for (Document document : documents) {
+            org.apache.lucene.document.Document indexDocument = new org.apache.lucene.document.Document();
+            indexDocument.add(new StringField(FIELD_ID, String.valueOf(document.getId()), Field.Store.YES));
+            indexDocument.add(new StringField(FIELD_STATUS, document.getStatus().name(), Field.Store.NO));
+            indexDocument.add(new StringField(FIELD_DEPARTMENT, document.getDepartment(), Field.Store.NO));
+            indexDocument.add(new TextField(FIELD_TITLE, document.getTitle(), Field.Store.NO));
+            if (document.getDescription() != null) {
+                indexDocument.add(new TextField(FIELD_DESCRIPTION, document.getDescription(), Field.Store.NO));
+            }
+            StringBuilder comments = commentsByDocument.get(document.getId());
+            if (comments != null) {
+                indexDocument.add(new TextField(FIELD_COMMENTS, comments.toString(), Field.Store.NO));
+            }
+            String content = contents.get(document.getId());
+            indexDocument.add(new TextField(FIELD_CONTENT,
+                    content != null ? content : textExtractor.extractText(document), Field.Store.NO));
+
+            try {
+                indexWriter.updateDocument(new Term(FIELD_ID, String.valueOf(document.getId())), indexDocument);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void deleteDocument(Long documentId) {
+        try {
+            indexWriter.deleteDocuments(new Term(FIELD_ID, String.valueOf(documentId)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void commitChanges() {
+        try {
+            if (!indexWriter.hasUncommittedChanges()) {
+                return;
+            }
+            if (caughtUp) {
+                // Индексация идет в этом же потоке: все изменения, переданные до этого момента, уже в индексе
+                commit(LocalDateTime.now());
+            } else {
+                // До завершения догрузки сохраняется прежняя метка, чтобы сбой не пропустил недогруженное
+                indexWriter.commit();
+            }
+        } catch (Exception e) {
+            logger.error("Ошибка при сохранении поискового индекса: {}", e.getMessage(), e);
+        }
+    }
+
+    private void commit(LocalDateTime indexedUntil) throws IOException {
+        indexWriter.setLiveCommitData(Map.of(COMMIT_INDEXED_UNTIL, indexedUntil.toString()).entrySet());
+        indexWriter.commit();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        indexExecutor.shutdown();
+        indexExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        searcherManager.close();
+        indexWriter.close();
+        directory.close();
+    }
+}
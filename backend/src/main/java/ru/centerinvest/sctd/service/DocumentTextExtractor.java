@@ -0,0 +1,91 @@
+package ru.centerinvest.sctd.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.centerinvest.sctd.model.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Извлечение текста из файлов документов для полнотекстового индекса.
+ * Поддерживаются текстовые форматы и DOCX; остальные форматы пропускаются.
+ */
+@Component
+public class DocumentTextExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentTextExtractor.class);
+
+    private static final String DOCX_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    private final ContentAddressedFileStore contentAddressedFileStore;
+    private final int maxChars;
+
+    public DocumentTextExtractor(ContentAddressedFileStore contentAddressedFileStore,
+                                 @Value("${search.max-extracted-chars:1000000}") int maxChars) {
+        this.contentAddressedFileStore = contentAddressedFileStore;
+        this.maxChars = maxChars;
+    }
+
+    public String extractText(Document document) {
+        if (document.getFilePath() == null) {
+            return "";
+        }
+        try (InputStream in = contentAddressedFileStore.open(document.getFileDigest(), document.getFilePath(), 0, -1)) {
+            return extractText(in, document.getFileType(), document.getFileName());
+        } catch (NoSuchFileException e) {
+            return "";
+        } catch (IOException e) {
+            logger.warn("Не удалось извлечь текст документа {}: {}", document.getId(), e.getMessage());
+            return "";
+        }
+    }
+
+    public String extractText(InputStream in, String fileType, String fileName) throws IOException {
+        String type = fileType != null ? fileType.toLowerCase() : "";
+        String name = fileName != null ? fileName.toLowerCase() : "";
+
+        if (DOCX_TYPE.equals(type) || name.endsWith(".docx")) {
+            return extractDocx(in);
+        }
+        if (type.startsWith("text/") || type.endsWith("/xml") || type.endsWith("/json")
+                || name.endsWith(".txt") || name.endsWith(".xml") || name.endsWith(".csv") || name.endsWith(".md")) {
+            return readLimited(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        return "";
+    }
+
+    // DOCX — zip-архив, текст лежит в word/document.xml
+    private String extractDocx(InputStream in) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if ("word/document.xml".equals(entry.getName())) {
+                    String xml = readLimited(new InputStreamReader(zip, StandardCharsets.UTF_8));
+                    return xml.replaceAll("<w:p[ >][^>]*>|<w:p>", "\n")
+                            .replaceAll("<[^>]+>", " ")
+                            .replaceAll("[ \\t]+", " ");
+                }
+            }
+        }
+        return "";
+    }
+
+    private String readLimited(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while (text.length() < maxChars && (read = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, Math.min(read, maxChars - text.length()));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,272 @@
+package ru.centerinvest.sctd.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.centerinvest.sctd.dto.LegalDocumentDto;
+import ru.centerinvest.sctd.model.LegalAct;
+import ru.centerinvest.sctd.repository.LegalActRepository;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Локальный каталог нормативно-правовых актов.
+ * Каталог хранится в таблице legal_acts и пополняется из файла выгрузки (JSON Lines: number, title,
+ * issueDate, documentType, sourceUrl); файл перечитывается, когда меняется время его изменения.
+ * Поиск обслуживается индексом в памяти ({@link LegalActIndex}); индекс догружается из таблицы
+ * только измененными записями и подменяется целиком, поэтому поиск не блокируется обновлением.
+ * <p>
+ * Метрика: sctd.legal.catalog.size.
+ */
+@Service
+public class LegalActCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegalActCatalog.class);
+
+    // Записи, зафиксированные с опозданием относительно своего updatedAt, догружаются с перекрытием
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+    private static final LocalDateTime NEVER = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Вставка и обновление — двумя запросами: ON CONFLICT ... DO UPDATE нет в H2 (режим PostgreSQL),
+    // а ON CONFLICT DO NOTHING и IS DISTINCT FROM поддерживаются обеими БД
+    private static final String INSERT_SQL =
+            "INSERT INTO legal_acts (source_url, number, title, document_type, issue_date, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    // Неизмененные акты не трогаются, чтобы не попадать в инкрементальную загрузку
+    private static final String UPDATE_SQL =
+            "UPDATE legal_acts SET number = ?, title = ?, document_type = ?, issue_date = ?, updated_at = ? " +
+            "WHERE source_url = ? AND (number IS DISTINCT FROM ? OR title IS DISTINCT FROM ? " +
+            "OR document_type IS DISTINCT FROM ? OR issue_date IS DISTINCT FROM ?)";
+
+    private final LegalActRepository legalActRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final String dumpFile;
+    private final int batchSize;
+    private final int maxResults;
+
+    // Все акты каталога по id; изменяется только потоком обновления
+    private final Map<Long, LegalDocumentDto> acts = new HashMap<>();
+    private LocalDateTime loadedUpdatedAt = NEVER;
+    private long loadedDumpModified = -1;
+
+    private volatile LegalActIndex index = LegalActIndex.EMPTY;
+
+    /**
+     * Строка файла выгрузки
+     */
+    record DumpRecord(String number, String title, LocalDate issueDate, String documentType, String sourceUrl) {
+    }
+
+    public LegalActCatalog(LegalActRepository legalActRepository,
+                           JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${legal.catalog.dump-file:}") String dumpFile,
+                           @Value("${legal.catalog.batch-size:1000}") int batchSize,
+                           @Value("${legal.catalog.max-results:50}") int maxResults) {
+        this.legalActRepository = legalActRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.dumpFile = dumpFile;
+        this.batchSize = batchSize;
+        this.maxResults = maxResults;
+        Gauge.builder("sctd.legal.catalog.size", this, catalog -> catalog.index.size())
+                .description("Число актов в локальном каталоге")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Поиск актов по словам запроса (номер или название) с фильтрами по типу и дате принятия
+     */
+    public List<LegalDocumentDto> search(String query, String documentType, LocalDate issuedAfter, LocalDate issuedBefore) {
+        return index.search(query, documentType, issuedAfter, issuedBefore, maxResults);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refresh();
+    }
+
+    /**
+     * Загрузка выгрузки, если файл изменился, и догрузка измененных записей в индекс
+     */
+    @Scheduled(fixedDelayString = "${legal.catalog.refresh-interval:PT15M}",
+               initialDelayString = "${legal.catalog.refresh-interval:PT15M}")
+    public synchronized void refresh() {
+        try {
+            importDumpIfChanged();
+        } catch (Exception e) {
+            logger.error("Ошибка загрузки выгрузки каталога актов {}: {}", dumpFile, e.getMessage(), e);
+        }
+        try {
+            loadChanges();
+        } catch (Exception e) {
+            logger.error("Ошибка обновления каталога актов: {}", e.getMessage(), e);
+        }
+    }
+
+    private void importDumpIfChanged() throws IOException {
+        if (dumpFile.isBlank()) {
+            return;
+        }
+        Path path = Paths.get(dumpFile);
+        if (!Files.exists(path)) {
+            return;
+        }
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        if (modified == loadedDumpModified) {
+            return;
+        }
+        long imported = 0;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             MappingIterator<DumpRecord> records = objectMapper.readerFor(DumpRecord.class).readValues(reader)) {
+            List<DumpRecord> batch = new ArrayList<>(batchSize);
+            while (records.hasNextValue()) {
+                DumpRecord record = records.nextValue();
+                if (record.sourceUrl() == null || record.title() == null) {
+                    continue;
+                }
+                batch.add(record);
+                if (batch.size() >= batchSize) {
+                    imported += upsert(batch);
+                    batch.clear();
+                }
+            }
+            imported += upsert(batch);
+        }
+        loadedDumpModified = modified;
+        logger.info("Выгрузка каталога актов {} загружена, изменено записей: {}", dumpFile, imported);
+    }
+
+    /**
+     * Пакетная запись порции выгрузки одной транзакцией: JDBC-пакеты вместо запросов на каждую строку.
+     * Новые акты вставляются, существующие обновляются, только если изменились.
+     */
+    private long upsert(List<DumpRecord> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return transactionTemplate.execute(tx -> {
+            int[][] inserted = jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(),
+                    (statement, record) -> {
+                        statement.setString(1, record.sourceUrl());
+                        statement.setString(2, record.number());
+                        statement.setString(3, record.title());
+                        statement.setString(4, record.documentType());
+                        statement.setDate(5, toSqlDate(record.issueDate()));
+                        statement.setTimestamp(6, now);
+                    });
+            // Только что вставленные акты совпадают с выгрузкой и обновлением не затрагиваются
+            int[][] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(),
+                    (statement, record) -> {
+                        statement.setString(1, record.number());
+                        statement.setString(2, record.title());
+                        statement.setString(3, record.documentType());
+                        statement.setDate(4, toSqlDate(record.issueDate()));
+                        statement.setTimestamp(5, now);
+                        statement.setString(6, record.sourceUrl());
+                        statement.setString(7, record.number());
+                        statement.setString(8, record.title());
+                        statement.setString(9, record.documentType());
+                        statement.setDate(10, toSqlDate(record.issueDate()));
+                    });
+            return changed(inserted) + changed(updated);
+        });
+    }
+
+    private static long changed(int[][] counts) {
+        long changed = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                changed += Math.max(count, 0);
+            }
+        }
+        return changed;
+    }
+
+    private static Date toSqlDate(LocalDate date) {
+        return date != null ? Date.valueOf(date) : null;
+    }
+
+    private void loadChanges() {
+        LocalDateTime cursorUpdatedAt = loadedUpdatedAt.equals(NEVER)
+                ? NEVER
+                : loadedUpdatedAt.minus(REFRESH_OVERLAP);
+        Long cursorId = 0L;
+        int changed = 0;
+        while (true) {
+            List<LegalAct> page = legalActRepository.findChangedAfter(cursorUpdatedAt, cursorId,
+                    PageRequest.of(0, batchSize));
+            for (LegalAct act : page) {
+                LegalDocumentDto dto = toDto(act);
+                if (!dto.equals(acts.put(act.getId(), dto))) {
+                    changed++;
+                }
+                if (act.getUpdatedAt().isAfter(loadedUpdatedAt)) {
+                    loadedUpdatedAt = act.getUpdatedAt();
+                }
+            }
+            if (page.size() < batchSize) {
+                break;
+            }
+            LegalAct last = page.get(page.size() - 1);
+            cursorUpdatedAt = last.getUpdatedAt();
+            cursorId = last.getId();
+        }
+        if (changed > 0 || index == LegalActIndex.EMPTY) {
+            long start = System.nanoTime();
+            index = new LegalActIndex(acts.values());
+            logger.info("Индекс каталога актов перестроен: {} актов, изменено {}, {} мс",
+                    acts.size(), changed, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Заголовок в виде «Федеральный закон №395-1», описание — название акта
+     */
+    private static LegalDocumentDto toDto(LegalAct act) {
+        String heading = act.getNumber() == null
+                ? act.getDocumentType()
+                : (act.getDocumentType() != null ? act.getDocumentType() + " №" : "№") + act.getNumber();
+        return LegalDocumentDto.builder()
+                .title(heading != null ? heading : act.getTitle())
+                .description(act.getTitle())
+                .sourceUrl(act.getSourceUrl())
+                .number(act.getNumber())
+                .documentType(act.getDocumentType())
+                .issueDate(act.getIssueDate())
+                .build();
+    }
+}
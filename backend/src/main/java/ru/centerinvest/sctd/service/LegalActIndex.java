@@ -0,0 +1,226 @@
+package ru.centerinvest.sctd.service;
+
+import ru.centerinvest.sctd.dto.LegalDocumentDto;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Неизменяемый поисковый индекс каталога актов в памяти.
+ * Текст акта (тип, номер и название) нормализуется и индексируется двумя способами:
+ * триграммы — для поиска подстроки от трех символов, отсортированный словарь слов — для коротких префиксов.
+ * Списки актов хранятся отсортированными массивами номеров.
+ * Акты пронумерованы по убыванию даты принятия: результат уже упорядочен, свежие акты первыми.
+ */
+final class LegalActIndex {
+
+    static final LegalActIndex EMPTY = new LegalActIndex(List.of());
+
+    private static final int[] NONE = new int[0];
+
+    // Префикс, с которого начинается больше слов, не объединяется по спискам, а проверяется по тексту
+    private static final int MAX_PREFIX_WORDS = 32;
+
+    private final LegalDocumentDto[] acts;
+    private final String[] texts;
+    private final Map<Long, int[]> trigrams;
+    private final String[] words;
+    private final int[][] wordPostings;
+
+    LegalActIndex(Collection<LegalDocumentDto> catalog) {
+        this.acts = catalog.toArray(new LegalDocumentDto[0]);
+        Arrays.sort(acts, Comparator.comparing(LegalDocumentDto::getIssueDate,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        this.texts = new String[acts.length];
+
+        Map<Long, IntList> trigramLists = new HashMap<>();
+        TreeMap<String, IntList> wordLists = new TreeMap<>();
+        for (int id = 0; id < acts.length; id++) {
+            String text = normalize(acts[id].getTitle() + " " + acts[id].getDescription());
+            // Пробел в начале позволяет проверять начало слова поиском " префикс"
+            texts[id] = " " + text;
+            for (String word : text.split(" ")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                wordLists.computeIfAbsent(word, w -> new IntList()).addUnique(id);
+                for (int i = 0; i + 3 <= word.length(); i++) {
+                    trigramLists.computeIfAbsent(trigram(word, i), t -> new IntList()).addUnique(id);
+                }
+            }
+        }
+
+        this.trigrams = new HashMap<>(trigramLists.size() * 2);
+        trigramLists.forEach((trigram, list) -> trigrams.put(trigram, list.toArray()));
+        this.words = wordLists.keySet().toArray(new String[0]);
+        this.wordPostings = new int[words.length][];
+        int i = 0;
+        for (IntList list : wordLists.values()) {
+            wordPostings[i++] = list.toArray();
+        }
+    }
+
+    int size() {
+        return acts.length;
+    }
+
+    /**
+     * Поиск по словам запроса (все слова должны встречаться) с фильтрами; пустые фильтры не применяются.
+     * Кандидаты берутся из самого короткого списка (самая редкая триграмма запроса или короткий префикс)
+     * и проверяются по тексту в порядке дат; просмотр останавливается, как только набран limit.
+     */
+    List<LegalDocumentDto> search(String query, String documentType, LocalDate issuedAfter, LocalDate issuedBefore,
+                                  int limit) {
+        List<String> terms = new ArrayList<>();
+        for (String term : normalize(query == null ? "" : query).split(" ")) {
+            if (!term.isEmpty()) {
+                // Слово из одного-двух символов ищется как начало слова, длинное — как подстрока
+                terms.add(term.length() >= 3 ? term : " " + term);
+            }
+        }
+
+        int[] candidates = null;
+        for (String term : terms) {
+            int[] postings = term.startsWith(" ") ? byPrefix(term.substring(1)) : rarestTrigram(term);
+            if (postings != null && (candidates == null || postings.length < candidates.length)) {
+                candidates = postings;
+            }
+        }
+
+        List<LegalDocumentDto> result = new ArrayList<>(Math.min(limit, acts.length));
+        int count = candidates != null ? candidates.length : acts.length;
+        for (int i = 0; i < count && result.size() < limit; i++) {
+            int id = candidates != null ? candidates[i] : i;
+            if (matchesTerms(texts[id], terms) && matchesFilters(acts[id], documentType, issuedAfter, issuedBefore)) {
+                result.add(acts[id]);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesTerms(String text, List<String> terms) {
+        for (String term : terms) {
+            if (!text.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesFilters(LegalDocumentDto act, String documentType,
+                                          LocalDate issuedAfter, LocalDate issuedBefore) {
+        if (documentType != null && !documentType.isBlank() && !documentType.equalsIgnoreCase(act.getDocumentType())) {
+            return false;
+        }
+        if (issuedAfter != null && (act.getIssueDate() == null || act.getIssueDate().isBefore(issuedAfter))) {
+            return false;
+        }
+        return issuedBefore == null || (act.getIssueDate() != null && !act.getIssueDate().isAfter(issuedBefore));
+    }
+
+    /**
+     * Самый короткий список среди триграмм слова: каждый акт с этим словом в нем есть
+     */
+    private int[] rarestTrigram(String term) {
+        int[] rarest = null;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            int[] postings = trigrams.getOrDefault(trigram(term, i), NONE);
+            if (rarest == null || postings.length < rarest.length) {
+                rarest = postings;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * Объединение списков слов словаря, начинающихся с префикса.
+     * Если таких слов много, объединение дороже просмотра — тогда null, и префикс проверяется по тексту.
+     */
+    private int[] byPrefix(String prefix) {
+        int from = Arrays.binarySearch(words, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int[] result = NONE;
+        for (int i = from; i < words.length && words[i].startsWith(prefix); i++) {
+            if (i - from >= MAX_PREFIX_WORDS) {
+                return null;
+            }
+            result = union(result, wordPostings[i]);
+        }
+        return result;
+    }
+
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+                space = false;
+            } else if (!space) {
+                normalized.append(' ');
+                space = true;
+            }
+        }
+        int length = normalized.length();
+        return space && length > 0 ? normalized.substring(0, length - 1) : normalized.toString();
+    }
+
+    private static long trigram(String word, int offset) {
+        return ((long) word.charAt(offset) << 32) | ((long) word.charAt(offset + 1) << 16) | word.charAt(offset + 2);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Растущий список номеров актов; номера добавляются по возрастанию
+     */
+    private static final class IntList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        void addUnique(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package ru.centerinvest.sctd.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.User;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Пакетный импорт нормативно-правовых актов.
+ * Файлы скачиваются параллельно в общем ограниченном пуле; к одному хосту-источнику одновременно
+ * идет не больше заданного числа запросов (ограничение общее для всех пакетов).
+ * Файлы скачиваются потоком во временные файлы, в памяти не накапливаются.
+ * Скачанные акты сохраняются пачками, по транзакции на пачку; если транзакция пачки не удалась,
+ * ее акты сохраняются по одному, чтобы ошибка одного акта не отменяла остальные. Скачанные файлы
+ * удаляются только после сохранения, поэтому повтор не требует повторного скачивания.
+ * Акты с незаполненными полями отклоняются еще до скачивания.
+ * Результат по каждому акту передается вызывающему сразу по готовности, в потоке вызывающего.
+ */
+@Service
+public class LegalDocumentBatchImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegalDocumentBatchImporter.class);
+
+    // Неполная пачка сохраняется, если новых скачанных актов нет дольше этого времени
+    private static final long FLUSH_INTERVAL_MS = 200;
+
+    private final LegalDocumentService legalDocumentService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+    private final int maxPerHost;
+    private final int batchSize;
+
+    // Хосты берутся из присланных адресов, поэтому семафор хранится, только пока на него ссылаются
+    // обработчики импорта; после этого запись удаляется сборщиком мусора, и в ней не занято разрешений
+    private final Cache<String, Semaphore> hostPermits = Caffeine.newBuilder().weakValues().build();
+
+    /**
+     * Акт пакета
+     */
+    public record ImportItem(String title, String sourceUrl, String department) {
+    }
+
+    /**
+     * Результат импорта акта: document при успехе, error при ошибке; index — позиция акта в пакете
+     */
+    public record ImportResult(int index, String sourceUrl, Document document, String error) {
+
+        public boolean success() {
+            return document != null;
+        }
+    }
+
+    private record Downloaded(int index, ImportItem item, LegalDocumentService.DownloadedFile file, Exception error) {
+    }
+
+    public LegalDocumentBatchImporter(LegalDocumentService legalDocumentService,
+                                      TransactionTemplate transactionTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${legal.import.threads:8}") int threads,
+                                      @Value("${legal.import.max-per-host:2}") int maxPerHost,
+                                      @Value("${legal.import.batch-size:20}") int batchSize) {
+        this.legalDocumentService = legalDocumentService;
+        this.transactionTemplate = transactionTemplate;
+        this.maxPerHost = maxPerHost;
+        this.batchSize = batchSize;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "legal-import-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("sctd.legal.import.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Число задач скачивания актов в очереди")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Импорт пакета актов. Метод возвращается, когда по каждому акту передан результат
+     * или вызывающий отменил импорт (тогда оставшиеся акты не скачиваются).
+     */
+    public void importAll(List<ImportItem> items, User author, Consumer<ImportResult> listener,
+                          BooleanSupplier cancelled) throws InterruptedException {
+        // Очередь ограничена: при медленном сохранении скачивание приостанавливается
+        BlockingQueue<Downloaded> downloaded = new ArrayBlockingQueue<>(Math.max(1, batchSize));
+
+        // Акты группируются по хосту; на каждый хост запускается не больше maxPerHost обработчиков
+        Map<String, Queue<Integer>> byHost = new LinkedHashMap<>();
+        int remaining = 0;
+        for (int index = 0; index < items.size(); index++) {
+            String host;
+            try {
+                host = URI.create(items.get(index).sourceUrl()).getHost();
+            } catch (IllegalArgumentException e) {
+                host = null;
+            }
+            if (host == null) {
+                listener.accept(new ImportResult(index, items.get(index).sourceUrl(), null,
+                        "Некорректный адрес источника"));
+                continue;
+            }
+            if (isBlank(items.get(index).title()) || isBlank(items.get(index).department())) {
+                listener.accept(new ImportResult(index, items.get(index).sourceUrl(), null,
+                        "Не указано название или подразделение"));
+                continue;
+            }
+            byHost.computeIfAbsent(host.toLowerCase(), h -> new ConcurrentLinkedQueue<>()).add(index);
+            remaining++;
+        }
+        for (Map.Entry<String, Queue<Integer>> entry : byHost.entrySet()) {
+            Semaphore permits = hostPermits.get(entry.getKey(), h -> new Semaphore(maxPerHost));
+            int workers = Math.min(maxPerHost, entry.getValue().size());
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> download(items, entry.getValue(), permits, downloaded, cancelled));
+            }
+        }
+
+        List<Downloaded> pending = new ArrayList<>();
+        try {
+            while (remaining > 0 && !cancelled.getAsBoolean() && !executor.isShutdown()) {
+                Downloaded next = downloaded.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next != null) {
+                    remaining--;
+                    if (next.error() != null) {
+                        listener.accept(new ImportResult(next.index(), next.item().sourceUrl(), null,
+                                next.error().getMessage()));
+                    } else {
+                        pending.add(next);
+                    }
+                }
+                if (!pending.isEmpty() && (next == null || pending.size() >= batchSize || remaining == 0)) {
+                    save(pending, author, listener);
+                    pending.clear();
+                }
+            }
+        } finally {
+            // Временные файлы несохраненных актов (импорт отменен или прерван)
+            pending.forEach(item -> legalDocumentService.deleteDownloaded(item.file()));
+            Downloaded left;
+            while ((left = downloaded.poll()) != null) {
+                legalDocumentService.deleteDownloaded(left.file());
+            }
+        }
+    }
+
+    private void download(List<ImportItem> items, Queue<Integer> hostQueue, Semaphore permits,
+                          BlockingQueue<Downloaded> downloaded, BooleanSupplier cancelled) {
+        Integer index;
+        while ((index = hostQueue.poll()) != null) {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            ImportItem item = items.get(index);
+            Downloaded result;
+            try {
+                permits.acquire();
+                try {
+                    result = new Downloaded(index, item, legalDocumentService.downloadLegalDocument(item.sourceUrl()), null);
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                result = new Downloaded(index, item, null, e);
+            }
+            try {
+                // Отмененный импорт больше не читает очередь — ожидание места прекращается
+                while (!downloaded.offer(result, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.getAsBoolean()) {
+                        legalDocumentService.deleteDownloaded(result.file());
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                legalDocumentService.deleteDownloaded(result.file());
+                return;
+            }
+        }
+    }
+
+    private void save(List<Downloaded> batch, User author, Consumer<ImportResult> listener) {
+        List<Document> saved;
+        try {
+            saved = transactionTemplate.execute(tx -> {
+                List<Document> documents = new ArrayList<>(batch.size());
+                for (Downloaded item : batch) {
+                    documents.add(saveOne(item, author));
+                }
+                return documents;
+            });
+        } catch (Exception e) {
+            logger.warn("Не удалось сохранить пачку из {} актов, сохранение по одному: {}", batch.size(), e.getMessage());
+            for (Downloaded item : batch) {
+                try {
+                    Document document = transactionTemplate.execute(tx -> saveOne(item, author));
+                    listener.accept(new ImportResult(item.index(), item.item().sourceUrl(), document, null));
+                } catch (Exception itemError) {
+                    listener.accept(new ImportResult(item.index(), item.item().sourceUrl(), null,
+                            "Ошибка при сохранении документа: " + itemError.getMessage()));
+                } finally {
+                    legalDocumentService.deleteDownloaded(item.file());
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            legalDocumentService.deleteDownloaded(batch.get(i).file());
+            listener.accept(new ImportResult(batch.get(i).index(), batch.get(i).item().sourceUrl(), saved.get(i), null));
+        }
+    }
+
+    private Document saveOne(Downloaded downloaded, User author) {
+        ImportItem item = downloaded.item();
+        return legalDocumentService.saveImportedDocument(item.title(), item.sourceUrl(), item.department(), author,
+                downloaded.file());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
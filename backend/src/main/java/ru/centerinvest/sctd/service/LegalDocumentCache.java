@@ -0,0 +1,337 @@
+package ru.centerinvest.sctd.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Дисковый кэш скачанных нормативно-правовых актов по адресу источника.
+ * Вместе с телом хранятся валидаторы ответа (ETag, Last-Modified): повторный импорт того же акта
+ * выполняет условный запрос, и при ответе 304 используется тело из кэша.
+ * Объем кэша ограничен бюджетом в байтах, вытесняются давно не использованные акты (LRU).
+ * <p>
+ * Метрики: sctd.legal.cache.requests с тегом result (hit, miss), sctd.legal.cache.hit.ratio,
+ * sctd.legal.cache.saved (байт не скачано благодаря кэшу) и sctd.legal.cache.size.
+ */
+@Component
+public class LegalDocumentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegalDocumentCache.class);
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxBytes;
+
+    // Порядок доступа: первый элемент — давно не использованный; ключ — SHA-256 адреса
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter savedBytes;
+
+    /**
+     * Закэшированный акт: тело и валидаторы ответа источника
+     */
+    public record Entry(String key, String sourceUrl, String etag, String lastModified, String digest, long size) {
+    }
+
+    public LegalDocumentCache(MeterRegistry meterRegistry,
+                              @Value("${legal.cache.enabled:true}") boolean enabled,
+                              @Value("${legal.cache.dir:./legal-cache}") String dir,
+                              @Value("${legal.cache.max-bytes:1073741824}") long maxBytes) throws IOException {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+
+        this.hits = Counter.builder("sctd.legal.cache.requests")
+                .description("Импорты актов с проверкой кэша")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("sctd.legal.cache.requests")
+                .description("Импорты актов с проверкой кэша")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.savedBytes = Counter.builder("sctd.legal.cache.saved")
+                .description("Объем актов, взятых из кэша вместо повторного скачивания")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("sctd.legal.cache.hit.ratio", this, cache -> {
+                    double total = cache.hits.count() + cache.misses.count();
+                    return total > 0 ? cache.hits.count() / total : 0;
+                })
+                .description("Доля импортов актов, обслуженных из кэша")
+                .register(meterRegistry);
+        Gauge.builder("sctd.legal.cache.size", this, LegalDocumentCache::size)
+                .description("Объем дискового кэша актов")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (enabled) {
+            Files.createDirectories(this.dir);
+            load();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Запись кэша для адреса источника
+     */
+    public Optional<Entry> get(String sourceUrl) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            return Optional.ofNullable(entries.get(keyOf(sourceUrl)));
+        }
+    }
+
+    /**
+     * Копия тела записи во временный файл: хранилище забирает файл себе, поэтому кэш отдает копию
+     * (жесткую ссылку, если каталоги на одном томе).
+     * Копия перечитывается и сверяется с размером и SHA-256 записи: поврежденное или обрезанное тело
+     * удаляется из кэша. Пусто, если тело уже вытеснено из кэша или не прошло проверку.
+     */
+    public Optional<Path> copyBody(Entry entry, Path tempDir) throws IOException {
+        Path body = dir.resolve(entry.key() + BODY_SUFFIX);
+        Path tempFile = tempDir.resolve("legal-cached-" + entry.key() + "-" + System.nanoTime() + ".part");
+        try {
+            try {
+                Files.createLink(tempFile, body);
+            } catch (NoSuchFileException e) {
+                throw e;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Другой том или жесткие ссылки не поддерживаются
+                Files.copy(body, tempFile);
+            }
+        } catch (NoSuchFileException e) {
+            Files.deleteIfExists(tempFile);
+            remove(entry.key());
+            return Optional.empty();
+        }
+        try {
+            if (!matches(tempFile, entry)) {
+                logger.warn("Тело акта {} в кэше повреждено, запись удалена", entry.sourceUrl());
+                Files.deleteIfExists(tempFile);
+                remove(entry.key());
+                return Optional.empty();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return Optional.of(tempFile);
+    }
+
+    /**
+     * Совпадают ли размер и SHA-256 файла с записью
+     */
+    private static boolean matches(Path file, Entry entry) throws IOException {
+        if (Files.size(file) != entry.size()) {
+            return false;
+        }
+        MessageDigest digest = ContentAddressedFileStore.newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ContentAddressedFileStore.toHex(digest).equals(entry.digest());
+    }
+
+    /**
+     * Ответ 304: акт не изменился, тело берется из кэша
+     */
+    public void recordHit(Entry entry) {
+        hits.increment();
+        savedBytes.increment(entry.size());
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Сохранение скачанного акта. Ответ без валидаторов не кэшируется: его нельзя проверить условным запросом.
+     */
+    public void put(String sourceUrl, String etag, String lastModified, Path body, String digest, long size) {
+        if (!enabled) {
+            return;
+        }
+        String key = keyOf(sourceUrl);
+        if ((etag == null && lastModified == null) || size > maxBytes) {
+            remove(key);
+            return;
+        }
+        Entry entry = new Entry(key, sourceUrl, etag, lastModified, digest, size);
+        try {
+            Path tempBody = Files.createTempFile(dir, "body-", TEMP_SUFFIX);
+            Path tempMeta = Files.createTempFile(dir, "meta-", TEMP_SUFFIX);
+            try {
+                Files.copy(body, tempBody, StandardCopyOption.REPLACE_EXISTING);
+                writeMeta(entry, tempMeta);
+                synchronized (this) {
+                    Files.move(tempBody, dir.resolve(key + BODY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(tempMeta, dir.resolve(key + META_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Entry previous = entries.put(key, entry);
+                    totalBytes += size - (previous != null ? previous.size() : 0);
+                }
+            } finally {
+                Files.deleteIfExists(tempBody);
+                Files.deleteIfExists(tempMeta);
+            }
+        } catch (IOException e) {
+            logger.warn("Не удалось сохранить акт {} в кэш: {}", sourceUrl, e.getMessage());
+            return;
+        }
+        evict();
+    }
+
+    public synchronized long size() {
+        return totalBytes;
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Entry removed = entries.remove(key);
+            if (removed == null) {
+                return;
+            }
+            totalBytes -= removed.size();
+        }
+        deleteFiles(key);
+    }
+
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                totalBytes -= eldest.getValue().size();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        evicted.forEach(this::deleteFiles);
+    }
+
+    private void deleteFiles(String key) {
+        try {
+            Files.deleteIfExists(dir.resolve(key + META_SUFFIX));
+            Files.deleteIfExists(dir.resolve(key + BODY_SUFFIX));
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить акт {} из кэша: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Восстановление записей после перезапуска; порядок LRU — по времени изменения тела
+     */
+    private void load() throws IOException {
+        record Loaded(Entry entry, long lastUsed) {
+        }
+        List<Loaded> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                } else if (name.endsWith(META_SUFFIX)) {
+                    String key = name.substring(0, name.length() - META_SUFFIX.length());
+                    Path body = dir.resolve(key + BODY_SUFFIX);
+                    try {
+                        Entry entry = readMeta(key, path);
+                        if (Files.size(body) != entry.size()) {
+                            throw new IOException("Размер тела не совпадает с метаданными");
+                        }
+                        loaded.add(new Loaded(entry, Files.getLastModifiedTime(body).toMillis()));
+                    } catch (IOException | RuntimeException e) {
+                        deleteFiles(key);
+                    }
+                } else if (name.endsWith(BODY_SUFFIX)) {
+                    String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+                    if (!Files.exists(dir.resolve(key + META_SUFFIX))) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        }
+        loaded.sort(Comparator.comparingLong(Loaded::lastUsed));
+        synchronized (this) {
+            for (Loaded item : loaded) {
+                entries.put(item.entry().key(), item.entry());
+                totalBytes += item.entry().size();
+            }
+        }
+        evict();
+    }
+
+    private static void writeMeta(Entry entry, Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", entry.sourceUrl());
+        if (entry.etag() != null) {
+            properties.setProperty("etag", entry.etag());
+        }
+        if (entry.lastModified() != null) {
+            properties.setProperty("last-modified", entry.lastModified());
+        }
+        properties.setProperty("digest", entry.digest());
+        properties.setProperty("size", Long.toString(entry.size()));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, null);
+        }
+    }
+
+    private static Entry readMeta(String key, Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return new Entry(key, properties.getProperty("url"), properties.getProperty("etag"),
+                properties.getProperty("last-modified"), properties.getProperty("digest"),
+                Long.parseLong(properties.getProperty("size")));
+    }
+
+    private static String keyOf(String sourceUrl) {
+        MessageDigest digest = ContentAddressedFileStore.newDigest();
+        digest.update(sourceUrl.getBytes(StandardCharsets.UTF_8));
+        return ContentAddressedFileStore.toHex(digest);
+    }
+}
@@ -1,27 +1,49 @@
 package ru.centerinvest.sctd.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ru.centerinvest.sctd.dto.LegalDocumentDto;
+import ru.centerinvest.sctd.http.ExternalHttpClient;
 import ru.centerinvest.sctd.model.Document;
 import ru.centerinvest.sctd.model.StatusHistory;
 import ru.centerinvest.sctd.model.User;
 import ru.centerinvest.sctd.repository.DocumentRepository;
 import ru.centerinvest.sctd.repository.StatusHistoryRepository;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class LegalDocumentService {
 
-    private final RestTemplate restTemplate;
     private final DocumentRepository documentRepository;
     private final StatusHistoryRepository statusHistoryRepository;
-    private final String uploadsDir;
+    private final DocumentSearchService documentSearchService;
+    private final DocumentCounterService documentCounterService;
+    private final DocumentCache documentCache;
+    private final ContentAddressedFileStore contentAddressedFileStore;
+    private final LegalDocumentCache legalDocumentCache;
+    private final LegalActCatalog legalActCatalog;
+    private final ExternalHttpClient httpClient;
+    private final long maxFileSize;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     // API доступа к правовой информации
     private static final String PRAVO_GOV_API_URL = "http://pravo.gov.ru/proxy/ips";
@@ -29,81 +51,226 @@ public class LegalDocumentService {
 
     @Autowired
     public LegalDocumentService(DocumentRepository documentRepository, 
-                              StatusHistoryRepository statusHistoryRepository) {
+                              StatusHistoryRepository statusHistoryRepository,
+                              DocumentSearchService documentSearchService,
+                              DocumentCounterService documentCounterService,
+                              DocumentCache documentCache,
+                              ContentAddressedFileStore contentAddressedFileStore,
+                              LegalDocumentCache legalDocumentCache,
+                              LegalActCatalog legalActCatalog,
+                              ExternalHttpClient httpClient,
+                              @Value("${legal.import.max-file-size:104857600}") long maxFileSize) {
         this.documentRepository = documentRepository;
         this.statusHistoryRepository = statusHistoryRepository;
-        this.restTemplate = new RestTemplate();
-        this.uploadsDir = System.getProperty("user.dir") + "/uploads/";
-
-        // Создание директории для загрузок если она не существует
-        new java.io.File(uploadsDir).mkdirs();
+        this.documentSearchService = documentSearchService;
+        this.documentCounterService = documentCounterService;
+        this.documentCache = documentCache;
+        this.contentAddressedFileStore = contentAddressedFileStore;
+        this.legalDocumentCache = legalDocumentCache;
+        this.legalActCatalog = legalActCatalog;
+        this.httpClient = httpClient;
+        this.maxFileSize = maxFileSize;
     }
 
     /**
      * Поиск документов по ключевым словам
      */
     public List<LegalDocumentDto> searchLegalDocuments(String query) {
-        // В реальном проекте здесь должен быть вызов API для поиска документов
-        // Для примера возвращаем моковые данные
-        return Arrays.asList(
-            new LegalDocumentDto("Федеральный закон №395-1", 
-                "О банках и банковской деятельности", 
-                "https://pravo.gov.ru/proxy/ips/?doc_itself=&nd=102010268"),
-            new LegalDocumentDto("Федеральный закон №86-ФЗ", 
-                "О Центральном банке РФ (Банке России)", 
-                "https://pravo.gov.ru/proxy/ips/?doc_itself=&nd=102076584"),
-            new LegalDocumentDto("Федеральный закон №173-ФЗ", 
-                "О валютном регулировании и валютном контроле", 
-                "https://pravo.gov.ru/proxy/ips/?doc_itself=&nd=102084008")
-        );
+        return searchLegalDocuments(query, null, null, null);
+    }
+
+    /**
+     * Поиск актов в локальном каталоге с фильтрами по типу и диапазону дат принятия (включительно)
+     */
+    public List<LegalDocumentDto> searchLegalDocuments(String query, String documentType,
+                                                       LocalDate issuedAfter, LocalDate issuedBefore) {
+        return legalActCatalog.search(query, documentType, issuedAfter, issuedBefore);
+    }
+
+    /**
+     * Скачанный во временный файл акт: размер и дайджест посчитаны при записи
+     */
+    public record DownloadedFile(Path file, String digest, long size) {
     }
 
     /**
      * Загрузка документа по URL
      */
+    @Transactional
     public Document importLegalDocument(String title, String sourceUrl, String department, User author) {
+        DownloadedFile downloaded = null;
         try {
-            // Загрузка файла из внешнего источника
-            byte[] fileContent = restTemplate.getForObject(sourceUrl, byte[].class);
-            
-            // Генерация уникального имени файла
-            String fileName = UUID.randomUUID().toString() + ".pdf";
-            String filePath = uploadsDir + fileName;
-            
-            // Сохранение файла
-            java.nio.file.Files.write(java.nio.file.Paths.get(filePath), fileContent);
-            
-            // Создание документа
-            Document document = Document.builder()
-                    .title(title)
-                    .description("Нормативно-правовой акт, загруженный из внешнего источника: " + sourceUrl)
-                    .department(department)
-                    .author(author)
-                    .status(Document.Status.DRAFT)
-                    .filePath(filePath)
-                    .fileName(title + ".pdf")
-                    .fileType("application/pdf")
-                    .fileSize((long) fileContent.length)
-                    .createdAt(LocalDateTime.now())
-                    .updatedAt(LocalDateTime.now())
-                    .build();
-            
-            Document savedDocument = documentRepository.save(document);
-            
-            // Добавление истории статусов
-            StatusHistory statusHistory = StatusHistory.builder()
-                    .document(savedDocument)
-                    .user(author)
-                    .status(Document.Status.DRAFT)
-                    .comment("Автоматический импорт нормативно-правового акта")
-                    .createdAt(LocalDateTime.now())
-                    .build();
-            
-            statusHistoryRepository.save(statusHistory);
-            
-            return savedDocument;
+            // Загрузка файла из внешнего источника сразу на диск, без буфера на весь файл
+            downloaded = downloadLegalDocument(sourceUrl);
+            return saveImportedDocument(title, sourceUrl, department, author, downloaded);
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при импорте документа: " + e.getMessage(), e);
+        } finally {
+            deleteDownloaded(downloaded);
+        }
+    }
+
+    /**
+     * Скачивание файла акта из внешнего источника во временный файл.
+     * Тело ответа копируется потоком через буфер фиксированного размера; размер ограничен.
+     * Если акт уже скачивался, запрос условный: при ответе 304 тело берется из кэша.
+     * Временный файл удаляет вызывающий ({@link #deleteDownloaded}).
+     */
+    public DownloadedFile downloadLegalDocument(String sourceUrl) throws IOException {
+        LegalDocumentCache.Entry cached = legalDocumentCache.get(sourceUrl).orElse(null);
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null && cached.etag() != null) {
+            headers.put("If-None-Match", cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+            headers.put("If-Modified-Since", cached.lastModified());
+        }
+        DownloadedFile downloaded = httpClient.get(sourceUrl, headers,
+                response -> readResponse(sourceUrl, cached, response));
+        if (downloaded == null) {
+            // Тело вытеснено из кэша до ответа 304 или повреждено: повторный запрос без условий
+            downloaded = httpClient.get(sourceUrl, Map.of(), response -> readResponse(sourceUrl, null, response));
+        }
+        return downloaded;
+    }
+
+    /**
+     * Удаление временного файла скачанного акта; файл, уже перенесенный в хранилище, отсутствует
+     */
+    public void deleteDownloaded(DownloadedFile downloaded) {
+        if (downloaded == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(downloaded.file());
+        } catch (IOException e) {
+            // Оставшийся файл удалит сверка хранилища
+        }
+    }
+
+    private DownloadedFile readResponse(String sourceUrl, LegalDocumentCache.Entry cached,
+                                        ExternalHttpClient.Response response) throws IOException {
+        if (cached != null && response.statusCode() == 304) {
+            Optional<Path> body = legalDocumentCache.copyBody(cached, contentAddressedFileStore.getTempDir());
+            if (body.isEmpty()) {
+                return null;
+            }
+            legalDocumentCache.recordHit(cached);
+            return new DownloadedFile(body.get(), cached.digest(), cached.size());
         }
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IOException("Источник вернул статус " + response.statusCode());
+        }
+        long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        if (contentLength > maxFileSize) {
+            throw new IOException("Размер файла превышает допустимый: " + contentLength + " байт");
+        }
+        DownloadedFile downloaded = copyLimited(response.body(), contentAddressedFileStore.getTempDir(), maxFileSize);
+        if (legalDocumentCache.isEnabled()) {
+            legalDocumentCache.recordMiss();
+            legalDocumentCache.put(sourceUrl, response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null),
+                    downloaded.file(), downloaded.digest(), downloaded.size());
+        }
+        return downloaded;
+    }
+
+    /**
+     * Копия скачанного файла рядом с ним: жесткая ссылка, если файловая система их поддерживает
+     */
+    private static Path copyForStore(Path file) throws IOException {
+        Path copy = Files.createTempFile(file.getParent(), "legal-store-", ".part");
+        Files.delete(copy);
+        try {
+            Files.createLink(copy, file);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(file, copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Копирование потока во временный файл с подсчетом размера и SHA-256 за один проход.
+     * При превышении maxSize копирование прерывается, временный файл удаляется.
+     */
+    static DownloadedFile copyLimited(InputStream in, Path tempDir, long maxSize) throws IOException {
+        Path tempFile = Files.createTempFile(tempDir, "legal-", ".part");
+        MessageDigest digest = ContentAddressedFileStore.newDigest();
+        long size = 0;
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > maxSize) {
+                    throw new IOException("Размер файла превышает допустимый: более " + maxSize + " байт");
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        if (size == 0) {
+            Files.deleteIfExists(tempFile);
+            throw new IOException("Источник вернул пустой ответ");
+        }
+        return new DownloadedFile(tempFile, ContentAddressedFileStore.toHex(digest), size);
+    }
+
+    /**
+     * Создание документа из скачанного файла акта в текущей транзакции.
+     * Скачанный файл не расходуется: хранилище получает его копию, а сам файл удаляет вызывающий
+     * после фиксации, поэтому после отката транзакции акт можно сохранить повторно.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Document saveImportedDocument(String title, String sourceUrl, String department, User author,
+                                         DownloadedFile downloaded) {
+        // Сохранение файла: один и тот же акт хранится на диске один раз
+        ContentAddressedFileStore.StoredBlob blob;
+        try {
+            Path copy = copyForStore(downloaded.file());
+            try {
+                blob = contentAddressedFileStore.store(copy, downloaded.digest(), downloaded.size(), "application/pdf");
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при сохранении файла", e);
+        }
+
+        // Создание документа
+        Document document = Document.builder()
+                .title(title)
+                .description("Нормативно-правовой акт, загруженный из внешнего источника: " + sourceUrl)
+                .department(department)
+                .author(author)
+                .status(Document.Status.DRAFT)
+                .filePath(blob.digest())
+                .fileDigest(blob.digest())
+                .fileName(title + ".pdf")
+                .fileType("application/pdf")
+                .fileSize(blob.size())
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+
+        Document savedDocument = documentRepository.save(document);
+
+        // Добавление истории статусов
+        StatusHistory statusHistory = StatusHistory.builder()
+                .document(savedDocument)
+                .user(author)
+                .status(Document.Status.DRAFT)
+                .comment("Автоматический импорт нормативно-правового акта")
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        statusHistoryRepository.save(statusHistory);
+        documentCounterService.documentCreated(savedDocument.getDepartment(), savedDocument.getStatus());
+        documentCache.invalidate(savedDocument.getId());
+        documentSearchService.indexDocumentAsync(savedDocument.getId());
+
+        return savedDocument;
     }
 } 
\ No newline at end of file
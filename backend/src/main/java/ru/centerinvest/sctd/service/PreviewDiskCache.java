@@ -0,0 +1,136 @@
+package ru.centerinvest.sctd.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Кэш небольших файлов на локальном диске с вытеснением давно не использованных (LRU)
+ * при превышении бюджета в байтах. Порядок использования ведется в памяти;
+ * при запуске восстанавливается из каталога по времени изменения файлов.
+ */
+final class PreviewDiskCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreviewDiskCache.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path dir;
+    private final long maxBytes;
+
+    // Порядок доступа: первый элемент — давно не использованный
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    PreviewDiskCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+
+        record Existing(Path path, long size, long lastModified) {
+        }
+        List<Existing> existing = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    existing.add(new Existing(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+        existing.sort(Comparator.comparingLong(Existing::lastModified));
+        for (Existing file : existing) {
+            entries.put(file.path().getFileName().toString(), file.size());
+            totalBytes += file.size();
+        }
+        deleteFiles(evict());
+    }
+
+    /**
+     * Содержимое по ключу или null при промахе
+     */
+    byte[] get(String key) throws IOException {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        try {
+            return Files.readAllBytes(dir.resolve(key));
+        } catch (NoSuchFileException e) {
+            // Файл вытеснен между проверкой и чтением
+            synchronized (this) {
+                Long size = entries.remove(key);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            return null;
+        }
+    }
+
+    void put(String key, byte[] content) throws IOException {
+        if (content.length > maxBytes) {
+            return;
+        }
+        Path tempFile = Files.createTempFile(dir, "entry-", TEMP_SUFFIX);
+        try {
+            Files.write(tempFile, content);
+            Files.move(tempFile, dir.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = entries.put(key, (long) content.length);
+            totalBytes += content.length - (previous != null ? previous : 0);
+            evicted = evict();
+        }
+        deleteFiles(evicted);
+    }
+
+    synchronized long size() {
+        return totalBytes;
+    }
+
+    // Вызывается под блокировкой; файлы удаляются уже без нее
+    private List<String> evict() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            totalBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            iterator.remove();
+        }
+        return evicted;
+    }
+
+    private void deleteFiles(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(dir.resolve(key));
+            } catch (IOException e) {
+                logger.warn("Не удалось удалить файл кэша {}: {}", key, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.centerinvest.sctd.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Кэш сериализованных ответов GetDocument.
+ * Ключ — id документа и версия (updatedAt), поэтому устаревшие записи не требуют сброса
+ * и вытесняются сами. Размер ограничен суммарным объемом байт.
+ * Ответ, собранный не из той версии, что в ключе, в кэш не попадает.
+ */
+@Service
+public class SerializedDocumentCache {
+
+    private record Key(long documentId, long version) {
+    }
+
+    private final Cache<Key, ByteString> cache;
+
+    public SerializedDocumentCache(MeterRegistry meterRegistry,
+                                   @Value("${cache.serialized-documents.max-bytes:67108864}") long maxBytes,
+                                   @Value("${cache.serialized-documents.ttl:30m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .<Key, ByteString>weigher((key, bytes) -> bytes.size())
+                .expireAfterAccess(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "serialized-documents");
+    }
+
+    /**
+     * Сериализованный ответ и версия документа, из которой он собран
+     */
+    public record Serialized(long version, ByteString bytes) {
+    }
+
+    /**
+     * Байты ответа для версии документа. Загруженный ответ кладется в кэш, только если собран из той же версии:
+     * документ мог измениться между чтением версии и загрузкой, и тогда ответ отдается без кэширования.
+     */
+    public ByteString get(long documentId, long version, Supplier<Serialized> loader) {
+        Key key = new Key(documentId, version);
+        ByteString cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        Serialized loaded = loader.get();
+        if (loaded.version() != version) {
+            return loaded.bytes();
+        }
+        ByteString previous = cache.asMap().putIfAbsent(key, loaded.bytes());
+        return previous != null ? previous : loaded.bytes();
+    }
+}
@@ -0,0 +1,352 @@
+package ru.centerinvest.sctd.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.centerinvest.sctd.model.QuarantinedFile;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.repository.FileBlobRepository;
+import ru.centerinvest.sctd.repository.QuarantinedFileRepository;
+import ru.centerinvest.sctd.storage.FileStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Сверка файлов в хранилище с базой данных.
+ * Обходит хранилище пакетами с ограничением скорости и ищет файлы, на которые нет ссылок:
+ * блобы без строки в file_blobs, файлы старых документов в каталоге загрузок и брошенные временные файлы.
+ * Найденный файл сначала помещается в карантин и удаляется, только если остается сиротой
+ * по истечении карантина.
+ * <p>
+ * Блоб удаляется в транзакции, которая сама вставляет строку file_blobs: параллельная загрузка
+ * того же файла ждет ее завершения и затем записывает файл заново.
+ */
+@Service
+public class StorageReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageReconciliationService.class);
+
+    private static final String STORAGE_PREFIX = "storage:";
+    private static final String FILE_PREFIX = "file:";
+
+    // Ключ блоба — SHA-256; производные файлы (миниатюры) имеют вид <дайджест>.<суффикс>
+    private static final Pattern DIGEST_KEY = Pattern.compile("[0-9a-f]{64}(\\..+)?");
+    // Файлы документов, созданных до контентно-адресуемого хранилища: <UUID>_<имя файла> (загрузка документа)
+    // и <UUID>.pdf (импорт нормативного акта)
+    private static final Pattern LEGACY_FILE = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}(_.+|\\.pdf)");
+
+    private final FileStorage fileStorage;
+    private final FileBlobRepository fileBlobRepository;
+    private final DocumentRepository documentRepository;
+    private final QuarantinedFileRepository quarantinedFileRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Path uploadDir;
+    private final Path tempDir;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxFilesPerSecond;
+    private final Duration minAge;
+    private final Duration quarantinePeriod;
+
+    private final Counter reclaimedBytes;
+    private final Counter quarantinedFiles;
+    private final Counter deletedFiles;
+
+    /**
+     * Кандидат на удаление: место хранения, размер, время записи и значения, по которым на него ссылается база
+     */
+    private record Candidate(String location, long size, Instant lastModified, List<String> references) {
+    }
+
+    /**
+     * Источник файлов для сверки: проверка ссылок пакетом и удаление сироты
+     */
+    private interface Source {
+        Collection<String> findReferenced(Collection<String> references);
+
+        boolean delete(Candidate candidate) throws IOException;
+    }
+
+    public StorageReconciliationService(FileStorage fileStorage,
+                                        FileBlobRepository fileBlobRepository,
+                                        DocumentRepository documentRepository,
+                                        QuarantinedFileRepository quarantinedFileRepository,
+                                        TransactionTemplate transactionTemplate,
+                                        ContentAddressedFileStore contentAddressedFileStore,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${file.upload-dir:./uploads}") String uploadDir,
+                                        @Value("${file.reconciliation.enabled:true}") boolean enabled,
+                                        @Value("${file.reconciliation.batch-size:500}") int batchSize,
+                                        @Value("${file.reconciliation.max-files-per-second:1000}") int maxFilesPerSecond,
+                                        @Value("${file.reconciliation.min-age:24h}") Duration minAge,
+                                        @Value("${file.reconciliation.quarantine-period:24h}") Duration quarantinePeriod) {
+        this.fileStorage = fileStorage;
+        this.fileBlobRepository = fileBlobRepository;
+        this.documentRepository = documentRepository;
+        this.quarantinedFileRepository = quarantinedFileRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.tempDir = contentAddressedFileStore.getTempDir();
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxFilesPerSecond = maxFilesPerSecond;
+        this.minAge = minAge;
+        this.quarantinePeriod = quarantinePeriod;
+
+        this.reclaimedBytes = Counter.builder("sctd.storage.reconciliation.reclaimed")
+                .description("Объем удаленных файлов-сирот")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.quarantinedFiles = Counter.builder("sctd.storage.reconciliation.files")
+                .description("Файлы-сироты, найденные сверкой хранилища")
+                .tag("result", "quarantined")
+                .register(meterRegistry);
+        this.deletedFiles = Counter.builder("sctd.storage.reconciliation.files")
+                .description("Файлы-сироты, найденные сверкой хранилища")
+                .tag("result", "deleted")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${file.reconciliation.interval:PT6H}",
+               initialDelayString = "${file.reconciliation.initial-delay:PT10M}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime started = LocalDateTime.now();
+        Throttle throttle = new Throttle(maxFilesPerSecond);
+        boolean complete;
+
+        try (Stream<FileStorage.StoredFile> files = fileStorage.list()) {
+            complete = sweep(files
+                    .filter(file -> DIGEST_KEY.matcher(file.key()).matches())
+                    .map(file -> new Candidate(STORAGE_PREFIX + file.key(), file.size(), file.lastModified(),
+                            List.of(digestOf(file.key())))),
+                    storageSource(), throttle);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ошибка при обходе хранилища: {}", e.getMessage());
+            complete = false;
+        }
+
+        try (Stream<Candidate> legacyFiles = localFiles(uploadDir, name -> LEGACY_FILE.matcher(name).matches());
+             Stream<Candidate> tempFiles = localFiles(tempDir, name -> name.endsWith(".part"))) {
+            complete &= sweep(Stream.concat(legacyFiles, tempFiles), localSource(), throttle);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ошибка при обходе каталога загрузок: {}", e.getMessage());
+            complete = false;
+        }
+
+        if (complete) {
+            // После полного обхода в карантине остаются только записи о файлах, исчезнувших без участия сверки
+            transactionTemplate.executeWithoutResult(tx ->
+                    quarantinedFileRepository.deleteDetectedBefore(started.minus(quarantinePeriod)));
+        }
+    }
+
+    /**
+     * Обход кандидатов пакетами; false, если обход прерван
+     */
+    private boolean sweep(Stream<Candidate> candidates, Source source, Throttle throttle) {
+        Iterator<Candidate> iterator = candidates.iterator();
+        List<Candidate> batch = new ArrayList<>(batchSize);
+        try {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize || !iterator.hasNext()) {
+                    processBatch(batch, source);
+                    throttle.acquire(batch.size());
+                    batch.clear();
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void processBatch(List<Candidate> batch, Source source) {
+        Set<String> referenced = new HashSet<>(source.findReferenced(batch.stream()
+                .flatMap(candidate -> candidate.references().stream())
+                .collect(Collectors.toSet())));
+
+        Instant youngest = Instant.now().minus(minAge);
+        List<String> live = new ArrayList<>();
+        List<Candidate> orphans = new ArrayList<>();
+        for (Candidate candidate : batch) {
+            if (candidate.references().stream().anyMatch(referenced::contains)) {
+                live.add(candidate.location());
+            } else if (candidate.lastModified().isBefore(youngest)) {
+                // Недавно записанный файл может принадлежать незафиксированной транзакции
+                orphans.add(candidate);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (!live.isEmpty()) {
+            // На файл снова появилась ссылка (например, загружен тот же документ): снимаем с карантина
+            transactionTemplate.executeWithoutResult(tx -> quarantinedFileRepository.deleteByLocationIn(live));
+        }
+        if (orphans.isEmpty()) {
+            return;
+        }
+        Map<String, QuarantinedFile> quarantined = quarantinedFileRepository
+                .findByLocationIn(orphans.stream().map(Candidate::location).toList())
+                .stream()
+                .collect(Collectors.toMap(QuarantinedFile::getLocation, Function.identity()));
+
+        LocalDateTime expired = now.minus(quarantinePeriod);
+        for (Candidate orphan : orphans) {
+            QuarantinedFile entry = quarantined.get(orphan.location());
+            try {
+                if (entry == null) {
+                    transactionTemplate.executeWithoutResult(tx ->
+                            quarantinedFileRepository.insertIfAbsent(orphan.location(), orphan.size(), now));
+                    quarantinedFiles.increment();
+                    logger.info("Файл без ссылок помещен в карантин: {}", orphan.location());
+                } else if (entry.getDetectedAt().isBefore(expired) && source.delete(orphan)) {
+                    reclaimedBytes.increment(orphan.size());
+                    deletedFiles.increment();
+                    logger.info("Удален файл без ссылок: {} ({} байт)", orphan.location(), orphan.size());
+                }
+            } catch (Exception e) {
+                logger.warn("Не удалось обработать файл {}: {}", orphan.location(), e.getMessage());
+            }
+        }
+    }
+
+    private Source storageSource() {
+        return new Source() {
+            @Override
+            public Collection<String> findReferenced(Collection<String> digests) {
+                return fileBlobRepository.findExistingDigests(digests);
+            }
+
+            @Override
+            public boolean delete(Candidate candidate) {
+                String key = candidate.location().substring(STORAGE_PREFIX.length());
+                String digest = digestOf(key);
+                return Boolean.TRUE.equals(transactionTemplate.execute(tx -> {
+                    // Вставка строки блокирует дайджест: если строка уже есть, на файл появилась ссылка
+                    if (fileBlobRepository.insertIfAbsent(digest, 0) == 0) {
+                        quarantinedFileRepository.deleteById(candidate.location());
+                        return false;
+                    }
+                    try {
+                        fileStorage.delete(key);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    fileBlobRepository.deleteUnreferenced(digest);
+                    quarantinedFileRepository.deleteById(candidate.location());
+                    return true;
+                }));
+            }
+        };
+    }
+
+    private Source localSource() {
+        return new Source() {
+            @Override
+            public Collection<String> findReferenced(Collection<String> paths) {
+                return documentRepository.findExistingFilePaths(paths);
+            }
+
+            @Override
+            public boolean delete(Candidate candidate) throws IOException {
+                Files.deleteIfExists(Paths.get(candidate.location().substring(FILE_PREFIX.length())));
+                transactionTemplate.executeWithoutResult(tx -> quarantinedFileRepository.deleteById(candidate.location()));
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Файлы каталога без вложенных каталогов. Документ может ссылаться на файл как по нормализованному
+     * пути, так и по пути с "./" из конфигурации — проверяются оба варианта.
+     */
+    private static Stream<Candidate> localFiles(Path dir, Predicate<String> nameFilter) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return Stream.empty();
+        }
+        return Files.list(dir)
+                .filter(path -> nameFilter.test(path.getFileName().toString()))
+                .map(path -> {
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        if (!attributes.isRegularFile()) {
+                            return Optional.<Candidate>empty();
+                        }
+                        String normalized = path.toAbsolutePath().normalize().toString();
+                        String raw = path.toAbsolutePath().toString();
+                        return Optional.of(new Candidate(FILE_PREFIX + normalized, attributes.size(),
+                                attributes.lastModifiedTime().toInstant(),
+                                normalized.equals(raw) ? List.of(normalized) : List.of(normalized, raw)));
+                    } catch (NoSuchFileException e) {
+                        return Optional.<Candidate>empty();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .flatMap(Optional::stream);
+    }
+
+    private static String digestOf(String key) {
+        int dot = key.indexOf('.');
+        return dot >= 0 ? key.substring(0, dot) : key;
+    }
+
+    /**
+     * Ограничение скорости обхода: не более заданного числа файлов в секунду
+     */
+    private static final class Throttle {
+
+        private final long nanosPerFile;
+        private long next = System.nanoTime();
+
+        Throttle(int maxFilesPerSecond) {
+            this.nanosPerFile = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxFilesPerSecond);
+        }
+
+        void acquire(int files) throws InterruptedException {
+            next += files * nanosPerFile;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } else {
+                // Обход отстал (медленная база или диск): запас на последующий всплеск не копится
+                next = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.centerinvest.sctd.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище файлов документов.
+ * Файлы адресуются плоскими ключами из символов [A-Za-z0-9._-]; раскладка по каталогам
+ * или объектам — деталь реализации. Реализация выбирается свойством file.storage.type.
+ */
+public interface FileStorage {
+
+    /**
+     * Запись файла из локального временного файла; исходный файл переносится или удаляется
+     */
+    void write(String key, Path source) throws IOException;
+
+    /**
+     * Запись файла из потока; поток читается до конца, но не закрывается
+     */
+    void write(String key, InputStream content) throws IOException;
+
+    /**
+     * Чтение диапазона файла; length < 0 означает до конца файла
+     */
+    InputStream read(String key, long offset, long length) throws IOException;
+
+    default InputStream read(String key) throws IOException {
+        return read(key, 0, -1);
+    }
+
+    long size(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Путь к файлу на локальном диске, если хранилище локальное.
+     * Позволяет читать файл без копирования (mmap, transferTo).
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * Все файлы хранилища; поток нужно закрыть после использования
+     */
+    Stream<StoredFile> list() throws IOException;
+
+    /**
+     * Файл хранилища: ключ, размер в хранилище и время последней записи
+     */
+    record StoredFile(String key, long size, Instant lastModified) {
+    }
+}
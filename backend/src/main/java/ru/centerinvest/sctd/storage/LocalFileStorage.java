@@ -0,0 +1,352 @@
+package ru.centerinvest.sctd.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище файлов на локальном диске.
+ * Файлы раскладываются по двум уровням каталогов по хэшу ключа (256 x 256),
+ * чтобы ни один каталог не разрастался до миллионов записей.
+ * <p>
+ * Запись идет во временный файл, который записывающий поток сам фиксирует (fsync) — параллельно с другими.
+ * Перенос на место и fsync каталогов выполняет поток синхронизации группой: одновременные записи
+ * делят одну фиксацию журнала файловой системы, и fsync остальных каталогов группы почти ничего не стоит.
+ * Метод записи возвращает управление после фиксации каталога; ошибка fsync каталога передается записи.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalFileStorage implements FileStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalFileStorage.class);
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final String TEMP_DIR = ".tmp";
+    // Предельное ожидание групповой фиксации: запись не должна зависнуть, если поток синхронизации остановлен
+    private static final long COMMIT_TIMEOUT_SECONDS = 60;
+
+    private final Path root;
+    private final Path tempDir;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final boolean directorySyncSupported;
+
+    private final BlockingQueue<PendingWrite> syncQueue = new LinkedBlockingQueue<>();
+    private final Thread syncThread;
+    private volatile boolean running = true;
+
+    private final Timer writeTimer;
+    private final Timer readTimer;
+    private final DistributionSummary syncBatchSize;
+
+    /**
+     * Файл, ожидающий групповой фиксации
+     */
+    private record PendingWrite(Path tempFile, Path target, CompletableFuture<Void> done) {
+    }
+
+    public LocalFileStorage(MeterRegistry meterRegistry,
+                            @Value("${file.storage.local.root:${file.upload-dir:./uploads}/blobs}") String root,
+                            @Value("${file.storage.local.sync-batch-size:64}") int maxBatchSize,
+                            @Value("${file.storage.local.sync-batch-delay:2ms}") Duration maxBatchDelay) throws IOException {
+        this.root = Paths.get(root).toAbsolutePath();
+        this.tempDir = this.root.resolve(TEMP_DIR);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = maxBatchDelay.toNanos();
+        Files.createDirectories(tempDir);
+        this.directorySyncSupported = isDirectorySyncSupported(this.root);
+
+        this.writeTimer = Timer.builder("sctd.storage.write")
+                .description("Время записи файла с учетом фиксации на диск")
+                .tag("backend", "local")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.readTimer = Timer.builder("sctd.storage.read")
+                .description("Время чтения файла от открытия до закрытия потока")
+                .tag("backend", "local")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.syncBatchSize = DistributionSummary.builder("sctd.storage.sync.batch")
+                .description("Число файлов в одной групповой фиксации")
+                .tag("backend", "local")
+                .register(meterRegistry);
+
+        this.syncThread = new Thread(this::syncLoop, "file-storage-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    @Override
+    public void write(String key, Path source) throws IOException {
+        long start = System.nanoTime();
+        Path tempFile = Files.createTempFile(tempDir, "write-", ".part");
+        try {
+            Files.move(source, tempFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Источник на другом томе: копируем
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(source);
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        commit(tempFile, resolve(key));
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void write(String key, InputStream content) throws IOException {
+        long start = System.nanoTime();
+        Path tempFile = Files.createTempFile(tempDir, "write-", ".part");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            content.transferTo(out);
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        commit(tempFile, resolve(key));
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public InputStream read(String key, long offset, long length) throws IOException {
+        long start = System.nanoTime();
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        InputStream in;
+        try {
+            channel.position(offset);
+            in = Channels.newInputStream(channel);
+            if (length >= 0) {
+                in = new BoundedInputStream(in, length);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(resolve(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(resolve(key));
+    }
+
+    @Override
+    public Stream<StoredFile> list() throws IOException {
+        return Files.walk(root, 3)
+                .filter(path -> root.relativize(path).getNameCount() == 3)
+                .filter(path -> !path.startsWith(tempDir))
+                .map(LocalFileStorage::toStoredFile)
+                .flatMap(Optional::stream);
+    }
+
+    private static Optional<StoredFile> toStoredFile(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return Optional.empty();
+            }
+            return Optional.of(new StoredFile(path.getFileName().toString(), attributes.size(),
+                    attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            // Файл удален во время обхода
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path resolve(String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Недопустимый ключ файла: " + key);
+        }
+        String shard = shard(key);
+        return root.resolve(shard.substring(0, 2)).resolve(shard.substring(2, 4)).resolve(key);
+    }
+
+    private static String shard(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void commit(Path tempFile, Path target) throws IOException {
+        if (!running) {
+            Files.deleteIfExists(tempFile);
+            throw new IOException("Хранилище файлов остановлено");
+        }
+        PendingWrite pending = new PendingWrite(tempFile, target, new CompletableFuture<>());
+        syncQueue.add(pending);
+        try {
+            pending.done().get(COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Прервано ожидание фиксации файла");
+        } catch (TimeoutException e) {
+            // Файл, уже взятый потоком синхронизации, не удаляется: он может быть перенесен на место
+            if (syncQueue.remove(pending)) {
+                Files.deleteIfExists(tempFile);
+            }
+            throw new IOException("Истекло ожидание фиксации файла " + target.getFileName());
+        } catch (ExecutionException e) {
+            Files.deleteIfExists(tempFile);
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private void syncLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !syncQueue.isEmpty()) {
+            try {
+                PendingWrite first = syncQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Короткое окно для сбора одновременных записей в одну фиксацию
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingWrite next = syncQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                syncBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void syncBatch(List<PendingWrite> batch) {
+        syncBatchSize.record(batch.size());
+        // Содержимое файлов уже зафиксировано записывающими потоками; здесь — только переносы и каталоги
+        Map<Path, List<PendingWrite>> byDirectory = new LinkedHashMap<>();
+        for (PendingWrite pending : batch) {
+            try {
+                Files.createDirectories(pending.target().getParent());
+                Files.move(pending.tempFile(), pending.target(), StandardCopyOption.ATOMIC_MOVE);
+                byDirectory.computeIfAbsent(pending.target().getParent(), directory -> new ArrayList<>()).add(pending);
+            } catch (Exception e) {
+                pending.done().completeExceptionally(e);
+            }
+        }
+        // Перенос становится долговечным только после fsync каталога
+        for (Map.Entry<Path, List<PendingWrite>> entry : byDirectory.entrySet()) {
+            try {
+                forceDirectory(entry.getKey());
+                entry.getValue().forEach(pending -> pending.done().complete(null));
+            } catch (IOException e) {
+                entry.getValue().forEach(pending -> pending.done().completeExceptionally(e));
+            }
+        }
+    }
+
+    private void forceDirectory(Path directory) throws IOException {
+        if (!directorySyncSupported) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * На некоторых платформах каталог нельзя открыть как файл; это проверяется один раз при запуске,
+     * чтобы во время работы ошибка fsync каталога означала сбой, а не особенность платформы
+     */
+    private static boolean isDirectorySyncSupported(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+            return true;
+        } catch (IOException e) {
+            logger.info("fsync каталогов недоступен на этой платформе, переносы файлов фиксируются без него: {}",
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        syncThread.join(TimeUnit.SECONDS.toMillis(30));
+        // Записи, поставленные после выхода потока синхронизации, завершаются ошибкой сразу
+        PendingWrite pending;
+        while ((pending = syncQueue.poll()) != null) {
+            pending.done().completeExceptionally(new IOException("Хранилище файлов остановлено"));
+        }
+    }
+}
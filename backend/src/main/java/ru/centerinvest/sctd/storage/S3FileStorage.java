@@ -0,0 +1,297 @@
+package ru.centerinvest.sctd.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище файлов в S3-совместимом объектном хранилище (AWS S3, MinIO и др.).
+ * Файлы больше порога загружаются multipart-частями, в памяти находится не более одной части;
+ * чтение диапазона выполняется ranged GET без скачивания всего объекта.
+ * Для MinIO задается endpoint и path-style адресация.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.type", havingValue = "s3")
+public class S3FileStorage implements FileStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3FileStorage.class);
+
+    // Минимальный размер части multipart-загрузки в S3 (кроме последней)
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String prefix;
+    private final int partSize;
+
+    private final Timer writeTimer;
+    private final Timer readTimer;
+
+    public S3FileStorage(MeterRegistry meterRegistry,
+                         @Value("${file.storage.s3.bucket}") String bucket,
+                         @Value("${file.storage.s3.prefix:blobs/}") String prefix,
+                         @Value("${file.storage.s3.region:us-east-1}") String region,
+                         @Value("${file.storage.s3.endpoint:}") String endpoint,
+                         @Value("${file.storage.s3.path-style-access:false}") boolean pathStyleAccess,
+                         @Value("${file.storage.s3.access-key:}") String accessKey,
+                         @Value("${file.storage.s3.secret-key:}") String secretKey,
+                         @Value("${file.storage.s3.part-size:8388608}") int partSize) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("file.storage.s3.part-size должен быть не меньше 5 МБ");
+        }
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyleAccess);
+        if (!endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        builder.credentialsProvider(!accessKey.isEmpty()
+                ? StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey))
+                : DefaultCredentialsProvider.create());
+
+        this.s3Client = builder.build();
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.partSize = partSize;
+
+        this.writeTimer = Timer.builder("sctd.storage.write")
+                .description("Время записи файла в объектное хранилище")
+                .tag("backend", "s3")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.readTimer = Timer.builder("sctd.storage.read")
+                .description("Время чтения файла от открытия до закрытия потока")
+                .tag("backend", "s3")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void write(String key, Path source) throws IOException {
+        long start = System.nanoTime();
+        long size = Files.size(source);
+        try {
+            if (size <= partSize) {
+                s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey(key)).build(),
+                        RequestBody.fromFile(source));
+            } else {
+                // Части читаются прямо из файла по смещениям, без буфера на весь файл
+                multipartUpload(key, (partNumber, offset) -> {
+                    long length = Math.min(partSize, size - offset);
+                    if (length <= 0) {
+                        return null;
+                    }
+                    // Поток части открывается заново при каждой попытке, повтор запроса не требует буфера
+                    return RequestBody.fromContentProvider(() -> {
+                        try {
+                            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ).position(offset);
+                            return new BoundedInputStream(Channels.newInputStream(channel), length);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, length, "application/octet-stream");
+                });
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Ошибка записи в S3: " + e.getMessage(), e);
+        }
+        Files.deleteIfExists(source);
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void write(String key, InputStream content) throws IOException {
+        long start = System.nanoTime();
+        byte[] firstPart = content.readNBytes(partSize);
+        try {
+            if (firstPart.length < partSize) {
+                s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey(key)).build(),
+                        RequestBody.fromBytes(firstPart));
+            } else {
+                // Размер потока заранее не известен: буферизуется по одной части
+                multipartUpload(key, (partNumber, offset) -> {
+                    byte[] part = partNumber == 1 ? firstPart : content.readNBytes(partSize);
+                    return part.length > 0 ? RequestBody.fromBytes(part) : null;
+                });
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Ошибка записи в S3: " + e.getMessage(), e);
+        }
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public InputStream read(String key, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        long start = System.nanoTime();
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(objectKey(key));
+        if (offset > 0 || length > 0) {
+            request.range("bytes=" + offset + "-" + (length > 0 ? String.valueOf(offset + length - 1) : ""));
+        }
+        ResponseInputStream<GetObjectResponse> in;
+        try {
+            in = s3Client.getObject(request.build());
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (S3Exception e) {
+            throw new IOException("Ошибка чтения из S3: " + e.getMessage(), e);
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                // Недочитанное тело прерывается, а не выкачивается до конца
+                in.abort();
+                super.close();
+                readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(objectKey(key)).build())
+                    .contentLength();
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (S3Exception e) {
+            throw new IOException("Ошибка чтения из S3: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        try {
+            s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            throw new IOException("Ошибка чтения из S3: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+        } catch (S3Exception e) {
+            throw new IOException("Ошибка удаления из S3: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Stream<StoredFile> list() {
+        // Страницы листинга запрашиваются лениво по мере чтения потока
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build())
+                .contents()
+                .stream()
+                .map(object -> new StoredFile(object.key().substring(prefix.length()), object.size(), object.lastModified()));
+    }
+
+    @PreDestroy
+    public void close() {
+        s3Client.close();
+    }
+
+    private String objectKey(String key) {
+        return prefix + key;
+    }
+
+    /**
+     * Источник частей multipart-загрузки; null означает, что частей больше нет
+     */
+    private interface PartSource {
+        RequestBody next(int partNumber, long offset) throws IOException;
+    }
+
+    private void multipartUpload(String key, PartSource parts) throws IOException {
+        String objectKey = objectKey(key);
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .build()).uploadId();
+        try {
+            List<CompletedPart> completedParts = new ArrayList<>();
+            long offset = 0;
+            int partNumber = 1;
+            RequestBody body;
+            while ((body = parts.next(partNumber, offset)) != null) {
+                long partLength = body.optionalContentLength().orElse(0L);
+                String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(objectKey)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(partLength)
+                        .build(), body).eTag();
+                completedParts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+                offset += partLength;
+                partNumber++;
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            // Незавершенные части иначе остаются в бакете и тарифицируются
+            try {
+                s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(objectKey)
+                        .uploadId(uploadId)
+                        .build());
+            } catch (RuntimeException abortError) {
+                logger.warn("Не удалось отменить multipart-загрузку {}: {}", objectKey, abortError.getMessage());
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+-- Исходная схема СЦТД (совместима с H2 и PostgreSQL)
+
+CREATE TABLE users (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name          VARCHAR(255) NOT NULL,
+    email         VARCHAR(255) NOT NULL,
+    password      VARCHAR(255) NOT NULL,
+    department    VARCHAR(255) NOT NULL,
+    role          VARCHAR(32)  NOT NULL,
+    created_at    TIMESTAMP    NOT NULL,
+    last_login_at TIMESTAMP,
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE TABLE documents (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title       VARCHAR(255)  NOT NULL,
+    description VARCHAR(1000),
+    department  VARCHAR(255)  NOT NULL,
+    author_id   BIGINT        NOT NULL,
+    status      VARCHAR(32)   NOT NULL,
+    file_path   VARCHAR(255)  NOT NULL,
+    file_type   VARCHAR(255)  NOT NULL,
+    file_name   VARCHAR(255)  NOT NULL,
+    file_size   BIGINT        NOT NULL,
+    created_at  TIMESTAMP     NOT NULL,
+    updated_at  TIMESTAMP     NOT NULL,
+    CONSTRAINT fk_documents_author FOREIGN KEY (author_id) REFERENCES users (id)
+);
+
+CREATE TABLE status_history (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    document_id BIGINT        NOT NULL,
+    user_id     BIGINT        NOT NULL,
+    status      VARCHAR(32)   NOT NULL,
+    comment     VARCHAR(1000),
+    created_at  TIMESTAMP     NOT NULL,
+    CONSTRAINT fk_status_history_document FOREIGN KEY (document_id) REFERENCES documents (id),
+    CONSTRAINT fk_status_history_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE TABLE comments (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    document_id BIGINT        NOT NULL,
+    user_id     BIGINT        NOT NULL,
+    text        VARCHAR(1000) NOT NULL,
+    created_at  TIMESTAMP     NOT NULL,
+    CONSTRAINT fk_comments_document FOREIGN KEY (document_id) REFERENCES documents (id),
+    CONSTRAINT fk_comments_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+-- ListDocuments: фильтры DocumentQueryService с сортировкой (created_at, id) для OFFSET и курсорной пагинации
+CREATE INDEX idx_documents_status_department_created ON documents (status, department, created_at, id);
+CREATE INDEX idx_documents_status_created ON documents (status, created_at, id);
+CREATE INDEX idx_documents_department_created ON documents (department, created_at, id);
+CREATE INDEX idx_documents_created ON documents (created_at, id);
+
+-- DocumentRepository.findByAuthor / findAvailableDocuments
+CREATE INDEX idx_documents_author ON documents (author_id);
+
+-- StatusHistoryRepository.findByDocumentOrderByCreatedAtDesc / findByDocumentIdsWithUser
+CREATE INDEX idx_status_history_document_created ON status_history (document_id, created_at, id);
+CREATE INDEX idx_status_history_user ON status_history (user_id);
+
+-- CommentRepository.findByDocument / findByDocumentIdsWithUser
+CREATE INDEX idx_comments_document_created ON comments (document_id, created_at, id);
+CREATE INDEX idx_comments_user ON comments (user_id);
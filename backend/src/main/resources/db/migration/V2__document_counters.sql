@@ -0,0 +1,13 @@
+-- Счетчики документов по отделу и статусу для статистики и total_elements без COUNT(*)
+
+CREATE TABLE document_counters (
+    department VARCHAR(255) NOT NULL,
+    status     VARCHAR(32)  NOT NULL,
+    doc_count  BIGINT       NOT NULL DEFAULT 0,
+    CONSTRAINT pk_document_counters PRIMARY KEY (department, status)
+);
+
+CREATE INDEX idx_document_counters_status ON document_counters (status);
+
+INSERT INTO document_counters (department, status, doc_count)
+SELECT department, status, COUNT(*) FROM documents GROUP BY department, status;
@@ -0,0 +1,18 @@
+-- Контентно-адресуемое хранилище файлов: каждый уникальный файл хранится один раз под своим SHA-256
+
+CREATE TABLE file_blobs (
+    digest      VARCHAR(64) NOT NULL,
+    size        BIGINT      NOT NULL,
+    ref_count   BIGINT      NOT NULL DEFAULT 0,
+    created_at  TIMESTAMP   NOT NULL,
+    released_at TIMESTAMP,
+    CONSTRAINT pk_file_blobs PRIMARY KEY (digest)
+);
+
+-- Кандидаты на сборку мусора: блобы без ссылок
+CREATE INDEX idx_file_blobs_unreferenced ON file_blobs (ref_count, released_at);
+
+-- Для старых документов дайджест не известен, они продолжают ссылаться на file_path
+ALTER TABLE documents ADD COLUMN file_digest VARCHAR(64);
+
+CREATE INDEX idx_documents_file_digest ON documents (file_digest);
@@ -0,0 +1,6 @@
+-- Сжатие файлов при хранении: size — исходный размер, stored_size — размер в хранилище
+
+ALTER TABLE file_blobs ADD COLUMN encoding VARCHAR(16) NOT NULL DEFAULT 'IDENTITY';
+ALTER TABLE file_blobs ADD COLUMN stored_size BIGINT;
+
+UPDATE file_blobs SET stored_size = size;
@@ -0,0 +1,11 @@
+-- Файлы-сироты, найденные сверкой хранилища с базой; удаляются, если остаются сиротами после карантина
+
+CREATE TABLE storage_quarantine (
+    location    VARCHAR(1024) NOT NULL,
+    size        BIGINT        NOT NULL,
+    detected_at TIMESTAMP     NOT NULL,
+    CONSTRAINT pk_storage_quarantine PRIMARY KEY (location)
+);
+
+-- Пакетная проверка ссылок на локальные файлы при сверке
+CREATE INDEX idx_documents_file_path ON documents (file_path);
@@ -0,0 +1,22 @@
+-- Редакции документа: полный снимок или дельта относительно предыдущей редакции
+
+CREATE TABLE document_revisions (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    document_id     BIGINT        NOT NULL,
+    revision_number INT           NOT NULL,
+    author_id       BIGINT        NOT NULL,
+    storage         VARCHAR(16)   NOT NULL,
+    -- Блоб с полным содержимым (SNAPSHOT) или с дельтой (DELTA)
+    blob_digest     VARCHAR(64)   NOT NULL,
+    stored_size     BIGINT        NOT NULL,
+    -- SHA-256 полного содержимого редакции для проверки восстановления
+    content_digest  VARCHAR(64)   NOT NULL,
+    file_name       VARCHAR(255)  NOT NULL,
+    file_type       VARCHAR(255)  NOT NULL,
+    file_size       BIGINT        NOT NULL,
+    comment         VARCHAR(1000),
+    created_at      TIMESTAMP     NOT NULL,
+    CONSTRAINT fk_document_revisions_document FOREIGN KEY (document_id) REFERENCES documents (id),
+    CONSTRAINT fk_document_revisions_author FOREIGN KEY (author_id) REFERENCES users (id),
+    CONSTRAINT uk_document_revisions_number UNIQUE (document_id, revision_number)
+);
@@ -0,0 +1,15 @@
+-- Локальный каталог нормативно-правовых актов для поиска без обращения к внешним порталам
+
+CREATE TABLE legal_acts (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    source_url    VARCHAR(1024) NOT NULL,
+    number        VARCHAR(255),
+    title         VARCHAR(2048) NOT NULL,
+    document_type VARCHAR(255),
+    issue_date    DATE,
+    -- Время последнего изменения записи; по нему каталог догружается инкрементально
+    updated_at    TIMESTAMP     NOT NULL,
+    CONSTRAINT uk_legal_acts_source_url UNIQUE (source_url)
+);
+
+CREATE INDEX idx_legal_acts_updated_at ON legal_acts (updated_at, id);
@@ -0,0 +1,127 @@
+package ru.centerinvest.sctd.grpc;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import ru.centerinvest.sctd.model.Comment;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.StatusHistory;
+import ru.centerinvest.sctd.model.User;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Число запросов при сборке страницы ListDocuments не зависит от размера страницы
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DocumentResponseAssembler.class)
+class DocumentResponseAssemblerTest {
+
+    private static final int DOCUMENTS = 50;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentResponseAssembler assembler;
+
+    @BeforeEach
+    void createDocuments() {
+        // У каждого документа свой автор, своя история и комментарии от разных пользователей
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            users.add(entityManager.persist(User.builder()
+                    .name("Пользователь " + i)
+                    .email("user" + i + "@centerinvest.ru")
+                    .password("password")
+                    .department("ИТ")
+                    .role(User.Role.USER)
+                    .build()));
+        }
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Document document = entityManager.persist(Document.builder()
+                    .title("Документ " + i)
+                    .department("ИТ")
+                    .author(users.get(i))
+                    .status(Document.Status.DRAFT)
+                    .filePath("blobs/" + i)
+                    .fileType("application/pdf")
+                    .fileName("document-" + i + ".pdf")
+                    .fileSize(1024L)
+                    .build());
+            for (int j = 0; j < 3; j++) {
+                User user = users.get((i + j + 1) % DOCUMENTS);
+                entityManager.persist(StatusHistory.builder()
+                        .document(document)
+                        .user(user)
+                        .status(Document.Status.DRAFT)
+                        .comment("Запись " + j)
+                        .build());
+                entityManager.persist(Comment.builder()
+                        .document(document)
+                        .user(user)
+                        .text("Комментарий " + j)
+                        .build());
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void statementCountDoesNotDependOnPageSize() {
+        long single = statementsForPage(1);
+        long full = statementsForPage(DOCUMENTS);
+
+        assertThat(full).isEqualTo(single);
+    }
+
+    @Test
+    void pageIsAssembledWithHistoryCommentsAndUsers() {
+        List<DocumentResponse> responses = assemble(DOCUMENTS);
+
+        assertThat(responses).hasSize(DOCUMENTS);
+        assertThat(responses).allSatisfy(response -> {
+            assertThat(response.getAuthor().getName()).startsWith("Пользователь");
+            assertThat(response.getStatusHistoryList()).hasSize(3)
+                    .allSatisfy(history -> assertThat(history.getUser().getEmail()).endsWith("@centerinvest.ru"));
+            assertThat(response.getCommentsList()).hasSize(3)
+                    .allSatisfy(comment -> assertThat(comment.getUser().getEmail()).endsWith("@centerinvest.ru"));
+        });
+    }
+
+    private long statementsForPage(int pageSize) {
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<DocumentResponse> responses = assemble(pageSize);
+
+        assertThat(responses).hasSize(pageSize);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<DocumentResponse> assemble(int pageSize) {
+        List<Document> page = documentRepository
+                .findAllBy(PageRequest.of(0, pageSize, Sort.by(Sort.Direction.DESC, "createdAt", "id")))
+                .getContent();
+        return assembler.toDocumentResponses(page);
+    }
+}
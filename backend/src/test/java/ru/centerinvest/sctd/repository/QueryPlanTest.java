@@ -0,0 +1,244 @@
+package ru.centerinvest.sctd.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.centerinvest.sctd.model.Document;
+import ru.centerinvest.sctd.model.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Планы горячих запросов на PostgreSQL со схемой из миграций Flyway.
+ * Проверяется SQL, который Hibernate строит для методов репозиториев: он перехватывается при вызове метода
+ * и разбирается через EXPLAIN (GENERIC_PLAN) с запрещенным последовательным сканированием.
+ * Чтение таблиц документов, истории и комментариев должно идти по условию индекса; чтение без условия индекса
+ * допускается только под LIMIT и без фильтра — тогда читаются лишь первые строки.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class QueryPlanTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final List<String> SCANNED_TABLES = List.of("documents", "status_history", "comments");
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.datasource.driverClassName", () -> "org.postgresql.Driver");
+        registry.add("spring.jpa.database-platform", () -> "org.hibernate.dialect.PostgreSQLDialect");
+    }
+
+    @TestConfiguration
+    static class StatementCapture {
+
+        @Bean
+        HibernatePropertiesCustomizer statementInspector() {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, (StatementInspector) sql -> {
+                STATEMENTS.add(sql);
+                return sql;
+            });
+        }
+    }
+
+    /**
+     * Вызов метода репозитория, SQL которого проверяется
+     */
+    private interface RepositoryCall {
+        void run(QueryPlanTest test);
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private StatusHistoryRepository statusHistoryRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private User user;
+    private Document document;
+
+    @BeforeEach
+    void createDocument() {
+        user = entityManager.persist(User.builder()
+                .name("Пользователь")
+                .email("user@centerinvest.ru")
+                .password("password")
+                .department("ИТ")
+                .role(User.Role.USER)
+                .build());
+        document = entityManager.persist(Document.builder()
+                .title("Документ")
+                .department("ИТ")
+                .author(user)
+                .status(Document.Status.DRAFT)
+                .filePath("blobs/1")
+                .fileType("application/pdf")
+                .fileName("document.pdf")
+                .fileSize(1024L)
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    static Stream<Named<RepositoryCall>> hotQueries() {
+        PageRequest page = PageRequest.of(2, 20);
+        ScrollPosition cursor = ScrollPosition.forward(
+                Map.of("createdAt", LocalDateTime.of(2024, 1, 1, 0, 0), "id", 1000L));
+        Limit limit = Limit.of(20);
+        return Stream.of(
+                // DocumentQueryService.findPage / findSummaryPage: OFFSET-пагинация по каждому сочетанию фильтров
+                call("findByStatusAndDepartment", test -> test.documentRepository
+                        .findByStatusAndDepartment(Document.Status.DRAFT, "ИТ", page)),
+                call("findByStatus", test -> test.documentRepository.findByStatus(Document.Status.DRAFT, page)),
+                call("findByDepartment", test -> test.documentRepository.findByDepartment("ИТ", page)),
+                call("findAllBy", test -> test.documentRepository.findAllBy(page)),
+                call("findSummariesByStatusAndDepartment", test -> test.documentRepository
+                        .findSummariesByStatusAndDepartment(Document.Status.DRAFT, "ИТ", page)),
+                // DocumentQueryService.findWindow / findSummaryWindow: первая страница и страница после курсора
+                call("findByStatusAndDepartmentOrderByCreatedAtDescIdDesc", test -> test.documentRepository
+                        .findByStatusAndDepartmentOrderByCreatedAtDescIdDesc(Document.Status.DRAFT, "ИТ", cursor, limit)),
+                call("findByStatusOrderByCreatedAtDescIdDesc", test -> test.documentRepository
+                        .findByStatusOrderByCreatedAtDescIdDesc(Document.Status.DRAFT, cursor, limit)),
+                call("findByDepartmentOrderByCreatedAtDescIdDesc", test -> test.documentRepository
+                        .findByDepartmentOrderByCreatedAtDescIdDesc("ИТ", cursor, limit)),
+                call("findAllByOrderByCreatedAtDescIdDesc", test -> test.documentRepository
+                        .findAllByOrderByCreatedAtDescIdDesc(ScrollPosition.keyset(), limit)),
+                call("findSummariesByStatusOrderByCreatedAtDescIdDesc", test -> test.documentRepository
+                        .findSummariesByStatusOrderByCreatedAtDescIdDesc(Document.Status.DRAFT, cursor, limit)),
+                // Поиск, GetDocument и скачивание файла
+                call("findByIdIn", test -> test.documentRepository.findByIdIn(List.of(1L, 2L, 3L))),
+                call("findSummaryById", test -> test.documentRepository.findSummaryById(42L)),
+                call("findUpdatedAtById", test -> test.documentRepository.findUpdatedAtById(42L)),
+                call("findFileInfoById", test -> test.documentRepository.findFileInfoById(42L)),
+                call("findByAuthor", test -> test.documentRepository.findByAuthor(test.user)),
+                // История статусов и комментарии документа и страницы документов
+                call("findByDocumentOrderByCreatedAtDesc", test -> test.statusHistoryRepository
+                        .findByDocumentOrderByCreatedAtDesc(test.document)),
+                call("statusHistory.findByDocumentIdsWithUser", test -> test.statusHistoryRepository
+                        .findByDocumentIdsWithUser(List.of(1L, 2L, 3L))),
+                call("statusHistory.countByUser", test -> test.statusHistoryRepository.countByUser(test.user)),
+                call("findByDocument", test -> test.commentRepository.findByDocument(test.document)),
+                call("comments.findByDocumentIdsWithUser", test -> test.commentRepository
+                        .findByDocumentIdsWithUser(List.of(1L, 2L, 3L))),
+                call("comments.countByUser", test -> test.commentRepository.countByUser(test.user)));
+    }
+
+    private static Named<RepositoryCall> call(String method, RepositoryCall call) {
+        return Named.of(method, call);
+    }
+
+    @ParameterizedTest
+    @MethodSource("hotQueries")
+    void hotQueryUsesIndex(RepositoryCall call) throws Exception {
+        STATEMENTS.clear();
+        call.run(this);
+        List<String> statements = STATEMENTS.stream()
+                .filter(sql -> sql.stripLeading().regionMatches(true, 0, "select", 0, 6))
+                .toList();
+        assertThat(statements).isNotEmpty();
+
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        for (String sql : statements) {
+            JsonNode plan = explain(sql);
+            List<String> violations = new ArrayList<>();
+            collectViolations(plan.get(0).get("Plan"), false, violations);
+            assertThat(violations)
+                    .as("План запроса %s:%n%s", sql, plan.toPrettyString())
+                    .isEmpty();
+        }
+    }
+
+    private JsonNode explain(String sql) throws Exception {
+        String json = jdbcTemplate.queryForObject("EXPLAIN (GENERIC_PLAN, FORMAT JSON) " + numberParameters(sql),
+                String.class);
+        return objectMapper.readTree(json);
+    }
+
+    /**
+     * Обход плана. Нарушение — чтение таблицы (последовательное или по индексу) без условия индекса,
+     * если строки при этом отбрасываются фильтром или чтение не ограничено LIMIT
+     */
+    private static void collectViolations(JsonNode node, boolean underLimit, List<String> violations) {
+        String nodeType = node.path("Node Type").asText();
+        String table = node.path("Relation Name").asText();
+        boolean scan = nodeType.equals("Seq Scan") || nodeType.equals("Index Scan") || nodeType.equals("Index Only Scan");
+        if (SCANNED_TABLES.contains(table) && scan && !node.has("Index Cond")) {
+            if (node.has("Filter")) {
+                violations.add(nodeType + " on " + table + " без условия индекса, с фильтром " + node.get("Filter"));
+            } else if (!underLimit) {
+                violations.add(nodeType + " on " + table + " без условия индекса и без LIMIT");
+            }
+        }
+        boolean limit = underLimit || nodeType.equals("Limit");
+        for (JsonNode child : node.path("Plans")) {
+            collectViolations(child, limit, violations);
+        }
+    }
+
+    /**
+     * Параметры JDBC (?) в нумерованные ($1, $2, ...), которые понимает EXPLAIN (GENERIC_PLAN)
+     */
+    private static String numberParameters(String sql) {
+        StringBuilder numbered = new StringBuilder(sql.length() + 16);
+        int parameter = 0;
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (c == '?' && !quoted) {
+                numbered.append('$').append(++parameter);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package ru.centerinvest.sctd.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.centerinvest.sctd.http.ExternalHttpClient;
+import ru.centerinvest.sctd.repository.DocumentRepository;
+import ru.centerinvest.sctd.repository.StatusHistoryRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Потоковое скачивание акта с ограничением размера против локального HTTP-сервера
+ */
+class LegalDocumentDownloadTest {
+
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private LegalDocumentService legalDocumentService;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.start();
+
+        ContentAddressedFileStore contentAddressedFileStore = mock(ContentAddressedFileStore.class);
+        when(contentAddressedFileStore.getTempDir()).thenReturn(tempDir);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ExternalHttpClient httpClient = new ExternalHttpClient(meterRegistry, Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 1, Duration.ofMillis(10), Duration.ofMillis(10), 5, Duration.ofSeconds(30),
+                100, Duration.ofMinutes(10), List.of());
+        legalDocumentService = new LegalDocumentService(mock(DocumentRepository.class),
+                mock(StatusHistoryRepository.class), mock(DocumentSearchService.class),
+                mock(DocumentCounterService.class), mock(DocumentCache.class), contentAddressedFileStore,
+                new LegalDocumentCache(meterRegistry, false, tempDir.resolve("cache").toString(), 0),
+                mock(LegalActCatalog.class), httpClient, MAX_FILE_SIZE);
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void bodyIsCopiedWithSizeAndDigest() throws Exception {
+        byte[] content = randomBytes(300 * 1024);
+        serve("/act.pdf", exchange -> {
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+        });
+
+        LegalDocumentService.DownloadedFile downloaded = legalDocumentService.downloadLegalDocument(url("/act.pdf"));
+
+        assertThat(downloaded.size()).isEqualTo(content.length);
+        assertThat(downloaded.digest())
+                .isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)));
+        assertThat(Files.readAllBytes(downloaded.file())).isEqualTo(content);
+
+        legalDocumentService.deleteDownloaded(downloaded);
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void contentLengthAboveLimitIsRejectedBeforeReading() throws IOException {
+        serve("/large.pdf", exchange -> {
+            exchange.sendResponseHeaders(200, MAX_FILE_SIZE + 1);
+            exchange.getResponseBody().write(randomBytes((int) MAX_FILE_SIZE + 1));
+        });
+
+        assertThatThrownBy(() -> legalDocumentService.downloadLegalDocument(url("/large.pdf")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("превышает");
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void chunkedBodyAboveLimitLeavesNoTempFile() throws IOException {
+        serve("/chunked.pdf", exchange -> {
+            // Длина 0 — ответ передается частями, размер заранее не известен
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            byte[] chunk = randomBytes(64 * 1024);
+            for (long sent = 0; sent <= MAX_FILE_SIZE; sent += chunk.length) {
+                body.write(chunk);
+            }
+        });
+
+        assertThatThrownBy(() -> legalDocumentService.downloadLegalDocument(url("/chunked.pdf")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("превышает");
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void errorStatusFails() throws IOException {
+        serve("/missing.pdf", exchange -> exchange.sendResponseHeaders(404, -1));
+
+        assertThatThrownBy(() -> legalDocumentService.downloadLegalDocument(url("/missing.pdf")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("404");
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void serve(String path, Handler handler) {
+        server.createContext(path, exchange -> {
+            try {
+                handler.handle(exchange);
+            } catch (IOException e) {
+                // Клиент прервал чтение тела
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private String url(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".part")).toList();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
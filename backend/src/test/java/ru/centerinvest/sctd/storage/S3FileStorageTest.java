@@ -0,0 +1,172 @@
+package ru.centerinvest.sctd.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * S3FileStorage против MinIO в контейнере: одиночный PUT, multipart выше размера части,
+ * ranged GET, листинг и отмена multipart-загрузки при ошибке
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class S3FileStorageTest {
+
+    private static final String BUCKET = "sctd-test";
+    private static final String PREFIX = "blobs/";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @Container
+    private static final MinIOContainer MINIO = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    private static S3Client s3Client;
+    private static S3FileStorage storage;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void createBucket() {
+        s3Client = S3Client.builder()
+                .region(Region.US_EAST_1)
+                .endpointOverride(URI.create(MINIO.getS3URL()))
+                .forcePathStyle(true)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(MINIO.getUserName(), MINIO.getPassword())))
+                .build();
+        s3Client.createBucket(CreateBucketRequest.builder().bucket(BUCKET).build());
+        storage = new S3FileStorage(new SimpleMeterRegistry(), BUCKET, PREFIX, "us-east-1", MINIO.getS3URL(), true,
+                MINIO.getUserName(), MINIO.getPassword(), PART_SIZE);
+    }
+
+    @AfterAll
+    static void close() {
+        storage.close();
+        s3Client.close();
+    }
+
+    @Test
+    void smallFileIsWrittenWithSinglePut() throws IOException {
+        byte[] content = randomBytes(1024);
+        Path source = Files.write(tempDir.resolve("small.bin"), content);
+
+        storage.write("small", source);
+
+        assertThat(source).doesNotExist();
+        assertThat(storage.exists("small")).isTrue();
+        assertThat(storage.size("small")).isEqualTo(content.length);
+        assertThat(readAll("small")).isEqualTo(content);
+    }
+
+    @Test
+    void fileAbovePartSizeIsWrittenInParts() throws IOException {
+        byte[] content = randomBytes(2 * PART_SIZE + 12345);
+        Path source = Files.write(tempDir.resolve("large.bin"), content);
+
+        storage.write("large-file", source);
+
+        assertThat(source).doesNotExist();
+        assertThat(storage.size("large-file")).isEqualTo(content.length);
+        assertThat(readAll("large-file")).isEqualTo(content);
+    }
+
+    @Test
+    void streamAbovePartSizeIsWrittenInParts() throws IOException {
+        byte[] content = randomBytes(PART_SIZE + 777);
+
+        storage.write("large-stream", new ByteArrayInputStream(content));
+
+        assertThat(storage.size("large-stream")).isEqualTo(content.length);
+        assertThat(readAll("large-stream")).isEqualTo(content);
+    }
+
+    @Test
+    void rangeIsReadWithRangedGet() throws IOException {
+        byte[] content = randomBytes(4096);
+        storage.write("ranged", new ByteArrayInputStream(content));
+
+        try (InputStream in = storage.read("ranged", 100, 50)) {
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(content, 100, 150));
+        }
+        try (InputStream in = storage.read("ranged", 4000, -1)) {
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(content, 4000, 4096));
+        }
+    }
+
+    @Test
+    void listReturnsKeysWithoutPrefix() throws IOException {
+        storage.write("listed-1", new ByteArrayInputStream(randomBytes(10)));
+        storage.write("listed-2", new ByteArrayInputStream(randomBytes(20)));
+
+        try (Stream<FileStorage.StoredFile> files = storage.list()) {
+            assertThat(files.filter(file -> file.key().startsWith("listed-")))
+                    .extracting(FileStorage.StoredFile::key, FileStorage.StoredFile::size)
+                    .containsExactlyInAnyOrder(
+                            tuple("listed-1", 10L),
+                            tuple("listed-2", 20L));
+        }
+    }
+
+    @Test
+    void failedMultipartUploadIsAborted() throws IOException {
+        // Первая часть читается целиком, на второй поток обрывается
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream(randomBytes(PART_SIZE)), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Обрыв источника");
+            }
+        });
+
+        assertThatThrownBy(() -> storage.write("broken", broken)).isInstanceOf(IOException.class);
+
+        assertThat(storage.exists("broken")).isFalse();
+        assertThat(s3Client.listMultipartUploads(ListMultipartUploadsRequest.builder()
+                .bucket(BUCKET)
+                .prefix(PREFIX + "broken")
+                .build()).uploads()).isEmpty();
+    }
+
+    @Test
+    void missingFileIsReportedAsNoSuchFile() {
+        assertThatThrownBy(() -> storage.read("missing")).isInstanceOf(NoSuchFileException.class);
+        assertThatThrownBy(() -> storage.size("missing")).isInstanceOf(NoSuchFileException.class);
+    }
+
+    private static byte[] readAll(String key) throws IOException {
+        try (InputStream in = storage.read(key)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}